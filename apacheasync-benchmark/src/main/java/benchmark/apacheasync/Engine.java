@@ -1,23 +1,45 @@
 package benchmark.apacheasync;
 
+import com.ss.benchmark.httpclient.common.Exceptions;
 import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import com.ss.benchmark.httpclient.common.PoolStats;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Engine implements HttpClientEngine {
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     private CloseableHttpAsyncClient client;
+    private CountingConnectionManager connectionManager;
 
     private RequestConfig requestConfig = RequestConfig.custom()
             .setConnectTimeout(CONNECT_TIMEOUT)
@@ -29,9 +51,14 @@ public class Engine implements HttpClientEngine {
     @Override
     public void createClient(String host, int port) {
         this.baseUrl = url(host, port);
+        // With our own connection manager the builder's pool settings don't apply; set them on it.
+        connectionManager = Exceptions.rethrowChecked(CountingConnectionManager::new);
+        connectionManager.setMaxTotal(MAX_CONNECTION_POOL_SIZE);
+        // Everything goes to one host, and the default is 2 per route.
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTION_POOL_SIZE);
         HttpAsyncClientBuilder httpAsyncClientBuilder = HttpAsyncClients.custom();
         httpAsyncClientBuilder
-                .setMaxConnTotal(MAX_CONNECTION_POOL_SIZE);
+                .setConnectionManager(connectionManager);
         client = httpAsyncClientBuilder.build();
         client.start();
     }
@@ -69,19 +96,31 @@ public class Engine implements HttpClientEngine {
 
     @Override
     public CompletableFuture<String> nonblockingGET(String path) {
-        final CompletableFuture<String> cfResponse = new CompletableFuture<>();
+        return execute(mkGet(path), EntityUtils::toString);
+    }
 
-        HttpGet request = new HttpGet(baseUrl + path);
-        request.setConfig(requestConfig);
+    @Override
+    public CompletableFuture<String> nonblockingPOST(String path, String body) {
+        return execute(mkPost(path, body), EntityUtils::toString);
+    }
 
-        client.execute(request, new FutureCallback<>() {
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingGETBytes(String path) {
+        return execute(mkGet(path), entity -> ByteBuffer.wrap(EntityUtils.toByteArray(entity)));
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingPOSTBytes(String path, String body) {
+        return execute(mkPost(path, body), entity -> ByteBuffer.wrap(EntityUtils.toByteArray(entity)));
+    }
+
+    @Override
+    public CompletableFuture<Long> nonblockingStreamGET(String path) {
+        final CompletableFuture<Long> cfResponse = new CompletableFuture<>();
+        client.execute(HttpAsyncMethods.create(mkGet(path)), new CountingConsumer(), new FutureCallback<>() {
             @Override
-            public void completed(HttpResponse httpResponse) {
-                try {
-                    cfResponse.complete(EntityUtils.toString(httpResponse.getEntity()));
-                } catch (Exception e) {
-                    cfResponse.completeExceptionally(e);
-                }
+            public void completed(Long bytes) {
+                cfResponse.complete(bytes);
             }
 
             @Override
@@ -97,22 +136,58 @@ public class Engine implements HttpClientEngine {
         return cfResponse;
     }
 
-    @Override
-    public CompletableFuture<String> nonblockingPOST(String path, String body) {
-        final CompletableFuture<String> cfResponse = new CompletableFuture<>();
+    // Counts the body as it's decoded, through the consumer's one reused buffer.
+    private static class CountingConsumer extends AsyncByteConsumer<Long> {
+        private int status;
+        private long bytes;
 
+        CountingConsumer() {
+            super(STREAM_BUFFER_SIZE);
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            status = response.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        protected void onByteReceived(ByteBuffer buffer, IOControl ioControl) {
+            bytes += buffer.remaining();
+        }
+
+        @Override
+        protected Long buildResult(HttpContext context) {
+            if (status != 200) {
+                throw new IllegalStateException("Unexpected response code: " + status);
+            }
+            return bytes;
+        }
+    }
+
+    private HttpGet mkGet(String path) {
+        HttpGet request = new HttpGet(baseUrl + path);
+        request.setConfig(requestConfig);
+        return request;
+    }
+
+    private HttpPost mkPost(String path, String body) {
         HttpPost request = new HttpPost(baseUrl + path);
         request.addHeader("content-type", "application/json");
         request.addHeader("Host", "localhost");
         StringEntity stringEntity = new StringEntity(body, "UTF-8");
         stringEntity.setContentType("application/json");
         request.setEntity(stringEntity);
+        return request;
+    }
+
+    private <T> CompletableFuture<T> execute(HttpUriRequest request, EntityReader<T> reader) {
+        final CompletableFuture<T> cfResponse = new CompletableFuture<>();
 
         client.execute(request, new FutureCallback<>() {
             @Override
             public void completed(HttpResponse httpResponse) {
                 try {
-                    cfResponse.complete(EntityUtils.toString(httpResponse.getEntity()));
+                    cfResponse.complete(reader.read(httpResponse.getEntity()));
                 } catch (Exception e) {
                     cfResponse.completeExceptionally(e);
                 }
@@ -131,6 +206,73 @@ public class Engine implements HttpClientEngine {
         return cfResponse;
     }
 
+    private interface EntityReader<T> {
+        T read(HttpEntity entity) throws IOException;
+    }
+
+    @Override
+    public PoolStats poolStats() {
+        return connectionManager.poolStats();
+    }
+
+    // The pool's own stats count neither the connections it opened nor the requests waiting for
+    // one (its "pending" are connects in progress), so we count those on the way through.
+    private static class CountingConnectionManager extends PoolingNHttpClientConnectionManager {
+        private final LongAdder created;
+        private final LongAdder waiting = new LongAdder();
+
+        CountingConnectionManager() throws IOReactorException {
+            this(new LongAdder());
+        }
+
+        private CountingConnectionManager(LongAdder created) throws IOReactorException {
+            super(new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT), (session, config) -> {
+                created.increment();
+                return ManagedNHttpClientConnectionFactory.INSTANCE.create(session, config);
+            });
+            this.created = created;
+        }
+
+        @Override
+        public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout,
+                long leaseTimeout, TimeUnit timeUnit, FutureCallback<NHttpClientConnection> callback) {
+            waiting.increment();
+            return super.requestConnection(route, state, connectTimeout, leaseTimeout, timeUnit, new FutureCallback<>() {
+                @Override
+                public void completed(NHttpClientConnection connection) {
+                    waiting.decrement();
+                    if (callback != null) {
+                        callback.completed(connection);
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    waiting.decrement();
+                    if (callback != null) {
+                        callback.failed(e);
+                    }
+                }
+
+                @Override
+                public void cancelled() {
+                    waiting.decrement();
+                    if (callback != null) {
+                        callback.cancelled();
+                    }
+                }
+            });
+        }
+
+        // Whatever's open is either leased or available, so the rest of what we opened has been closed.
+        PoolStats poolStats() {
+            org.apache.http.pool.PoolStats total = getTotalStats();
+            long opened = created.sum();
+            long open = total.getLeased() + total.getAvailable();
+            return new PoolStats(total.getLeased(), total.getAvailable(), Math.max(0, waiting.sum()), opened, Math.max(0, opened - open));
+        }
+    }
+
     @Override
     public void close() throws IOException {
         client.close();
@@ -2,30 +2,58 @@ package benchmark.apachesync;
 
 import com.ss.benchmark.httpclient.common.Exceptions;
 import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import com.ss.benchmark.httpclient.common.PoolStats;
+import com.ss.benchmark.httpclient.common.VirtualThreads;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 public class Engine implements HttpClientEngine {
 
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     private CloseableHttpClient client;
     private RequestConfig requestConfig;
     private String baseUrl = null;
 
-    private ExecutorService executorService = Executors.newFixedThreadPool(10);
+    // The non-blocking calls are blocking calls on another thread.  With -Dbm.threads=virtual that
+    // is a virtual thread per request, so the connection pool is the only limit.
+    private ExecutorService executorService = VirtualThreads.requested()
+            ? VirtualThreads.newPerTaskExecutor()
+            : Executors.newFixedThreadPool(10);
+
+    // HttpClient 4.x waits for a pooled connection inside a synchronized block, which pins a
+    // virtual thread to its carrier; with enough of them waiting nothing else gets to run.  So
+    // callers queue up here instead, where a virtual thread unmounts while it waits.  They wait
+    // no longer than the pool would (the connection request timeout) and fail the same way.
+    private final Semaphore connections = new Semaphore(MAX_CONNECTION_POOL_SIZE);
+
+    private PoolingHttpClientConnectionManager connectionManager;
+    private final LongAdder connectionsCreated = new LongAdder();
 
     @Override
     public void createClient(String host, int port) {
@@ -38,11 +66,18 @@ public class Engine implements HttpClientEngine {
                 .setSocketTimeout(READ_TIMEOUT)
                 .build();
 
-        PoolingHttpClientConnectionManager poolingHttpClientConnectionManager = new PoolingHttpClientConnectionManager();
-        poolingHttpClientConnectionManager.setMaxTotal(MAX_CONNECTION_POOL_SIZE);
+        // The pool doesn't count the connections it opens, so we count them as they're made.
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory = (route, config) -> {
+            connectionsCreated.increment();
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        };
+        connectionManager = new PoolingHttpClientConnectionManager(connectionFactory);
+        connectionManager.setMaxTotal(MAX_CONNECTION_POOL_SIZE);
+        // Everything goes to one host, and the default is 2 per route.
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTION_POOL_SIZE);
 
         client = HttpClients.custom()
-                .setConnectionManager(poolingHttpClientConnectionManager)
+                .setConnectionManager(connectionManager)
                 .build();
     }
 
@@ -72,19 +107,103 @@ public class Engine implements HttpClientEngine {
         return async(() -> blockingPOST(path, body));
     }
 
+    @Override
+    public ByteBuffer blockingGETBytes(String path) {
+        final HttpGet request = new HttpGet(baseUrl + path);
+        request.setConfig(requestConfig);
+        return executeBytes(request);
+    }
+
+    @Override
+    public ByteBuffer blockingPOSTBytes(String path, String body) {
+        final HttpPost request = new HttpPost(baseUrl + path);
+        request.setConfig(requestConfig);
+        StringEntity stringEntity = Exceptions.rethrowChecked(() -> new StringEntity(body));
+        request.setEntity(stringEntity);
+        return executeBytes(request);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingGETBytes(String path) {
+        return async(() -> blockingGETBytes(path));
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingPOSTBytes(String path, String body) {
+        return async(() -> blockingPOSTBytes(path, body));
+    }
+
+    @Override
+    public CompletableFuture<Long> nonblockingStreamGET(String path) {
+        return async(() -> {
+            final HttpGet request = new HttpGet(baseUrl + path);
+            request.setConfig(requestConfig);
+            return withConnection(() -> client.execute(request, response -> {
+                int status = response.getStatusLine().getStatusCode();
+                if (status != 200) {
+                    throw new IllegalStateException("Unexpected response code: " + status);
+                }
+                return drain(response.getEntity().getContent());
+            }));
+        });
+    }
+
+    // Reads the stream through one buffer and throws the bytes away.
+    private static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    // Pending includes the callers queued on our semaphore, in front of the pool.  Whatever's
+    // open is either leased or available, so the rest of what we opened has been closed.
+    @Override
+    public PoolStats poolStats() {
+        org.apache.http.pool.PoolStats total = connectionManager.getTotalStats();
+        long created = connectionsCreated.sum();
+        long open = total.getLeased() + total.getAvailable();
+        return new PoolStats(total.getLeased(), total.getAvailable(), total.getPending() + connections.getQueueLength(),
+                created, Math.max(0, created - open));
+    }
+
     @Override
     public void close() throws IOException {
+        executorService.shutdown();
         client.close();
     }
 
     private String execute(HttpUriRequest req) {
-        return Exceptions.rethrowChecked(() -> {
+        return withConnection(() -> {
             HttpResponse response = client.execute(req);
             return EntityUtils.toString(response.getEntity());
         });
     }
 
-    private CompletableFuture<String> async(Supplier<String> supplier) {
+    private ByteBuffer executeBytes(HttpUriRequest req) {
+        return withConnection(() -> {
+            HttpResponse response = client.execute(req);
+            return ByteBuffer.wrap(EntityUtils.toByteArray(response.getEntity()));
+        });
+    }
+
+    private <T> T withConnection(Callable<T> call) {
+        return Exceptions.rethrowChecked(() -> {
+            if (!connections.tryAcquire(requestConfig.getConnectionRequestTimeout(), TimeUnit.MILLISECONDS)) {
+                throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+            }
+            try {
+                return call.call();
+            } finally {
+                connections.release();
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> supplier) {
         return CompletableFuture.supplyAsync(supplier, executorService);
     }
 }
@@ -1,11 +1,21 @@
 package benchmark.asynchttpclient;
 
 import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import com.ss.benchmark.httpclient.common.NettyOptions;
+import com.ss.benchmark.httpclient.common.PoolStats;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.internal.PlatformDependent;
 import org.asynchttpclient.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
 import static com.ss.benchmark.httpclient.common.Exceptions.rethrowChecked;
 
@@ -13,22 +23,42 @@ public class Engine implements HttpClientEngine {
 
     private AsyncHttpClient client;
     private String baseUrl;
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
 
     @Override
     public void createClient(String host, int port) {
-        AsyncHttpClientConfig cf = new DefaultAsyncHttpClientConfig.Builder()
+        DefaultAsyncHttpClientConfig.Builder builder = new DefaultAsyncHttpClientConfig.Builder()
                 .setConnectTimeout(CONNECT_TIMEOUT)
                 .setReadTimeout(READ_TIMEOUT)
                 //.setRequestTimeout(REQUEST_TIMEOUT)
                 .setMaxConnections(MAX_CONNECTION_POOL_SIZE)
                 .setKeepAlive(true)
                 //.setConnectionTtl(CONNECTION_TTL)
-                .build();
+                .setHttpAdditionalChannelInitializer(channel -> {
+                    connectionsCreated.increment();
+                    channel.closeFuture().addListener(future -> connectionsClosed.increment());
+                });
+        // AHC runs on NIO unless told otherwise
+        if (NettyOptions.TRANSPORT != null) {
+            builder.setUseNativeTransport(NettyOptions.useEpoll("asynchttpclient", Epoll.isAvailable(), Epoll.unavailabilityCause()));
+        }
+        if (NettyOptions.customAllocator()) {
+            builder.setAllocator(allocator());
+        }
+        if (NettyOptions.THREADS > 0) {
+            builder.setIoThreadsCount(NettyOptions.THREADS);
+        }
 
-        client = new DefaultAsyncHttpClient(cf);
+        client = new DefaultAsyncHttpClient(builder.build());
         baseUrl = url(host, port);
     }
 
+    private static ByteBufAllocator allocator() {
+        return NettyOptions.allocator(PlatformDependent.directBufferPreferred(),
+                PooledByteBufAllocator::new, UnpooledByteBufAllocator::new);
+    }
+
     @Override
     public String blockingGET(String path) {
         return rethrowChecked(() -> nonblockingGET(path).get());
@@ -51,6 +81,75 @@ public class Engine implements HttpClientEngine {
         return execute(req);
     }
 
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingGETBytes(String path) {
+        Request req = client.prepareGet(mkUrl(path)).build();
+        return executeBytes(req);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingPOSTBytes(String path, String body) {
+        Request req = client.preparePost(mkUrl(path)).setBody(body).build();
+        return executeBytes(req);
+    }
+
+    @Override
+    public CompletableFuture<Long> nonblockingStreamGET(String path) {
+        // No overall deadline; the read timeout still applies between chunks.
+        Request req = client.prepareGet(mkUrl(path)).setRequestTimeout(-1).build();
+        return client.executeRequest(req, new CountingHandler()).toCompletableFuture();
+    }
+
+    // AHC doesn't queue for a connection: past setMaxConnections a request fails right away with
+    // TooManyConnectionsException, which shows up in errorRate.  So nothing is ever pending.
+    @Override
+    public PoolStats poolStats() {
+        ClientStats stats = client.getClientStats();
+        return new PoolStats(stats.getTotalActiveConnectionCount(), stats.getTotalIdleConnectionCount(), 0,
+                connectionsCreated.sum(), connectionsClosed.sum());
+    }
+
+    // Counts the body parts as they arrive instead of collecting them into a Response.
+    private static class CountingHandler implements AsyncHandler<Long> {
+        private int status;
+        private long bytes;
+
+        @Override
+        public State onStatusReceived(HttpResponseStatus responseStatus) {
+            status = responseStatus.getStatusCode();
+            return State.CONTINUE;
+        }
+
+        @Override
+        public State onHeadersReceived(HttpHeaders headers) {
+            return State.CONTINUE;
+        }
+
+        @Override
+        public State onBodyPartReceived(HttpResponseBodyPart bodyPart) {
+            bytes += bodyPart.length();
+            return State.CONTINUE;
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+        }
+
+        @Override
+        public Long onCompleted() {
+            if (status != 200) {
+                throw new IllegalStateException("Unexpected response code : " + status);
+            }
+            return bytes;
+        }
+    }
+
+    private CompletableFuture<ByteBuffer> executeBytes(Request request) {
+        return client.executeRequest(request)
+                .toCompletableFuture()
+                .thenApply(Response::getResponseBodyAsByteBuffer);
+    }
+
     private CompletableFuture<String> execute(Request request) {
         return client.executeRequest(request)
                 .toCompletableFuture()
@@ -0,0 +1,105 @@
+package com.ss.benchmark.httpclient.common;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Makes this run one of a {@link Coordinator}'s load generators (<code>-Dbm.agent=host:port</code>).
+ * Before each test method it waits for every other agent to get there too, so they all start
+ * together, and after it sends the method's latency histogram and error count to be merged.
+ * <p></p>
+ * It should be the first probe, so the others don't count the wait.
+ */
+public class AgentProbe implements MethodProbe, Closeable {
+
+    /** host:port of the coordinator, or null if this isn't an agent */
+    public static final String COORDINATOR = System.getProperty("bm.agent");
+    static final String NAME = System.getProperty("bm.agent.name", ManagementFactory.getRuntimeMXBean().getName());
+
+    private final Class<?> testClass;
+    private final Function<String, Histogram> histograms;
+    private final ToLongFunction<String> errors;
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private long startNanos;
+
+    /**
+     * @param histograms a method's latencies so far, in nanoseconds
+     * @param errors     a method's failed requests so far
+     */
+    public AgentProbe(Class<?> testClass, Function<String, Histogram> histograms, ToLongFunction<String> errors) {
+        this.testClass = testClass;
+        this.histograms = histograms;
+        this.errors = errors;
+        int colon = COORDINATOR.lastIndexOf(':');
+        this.socket = Exceptions.rethrowChecked(() ->
+                new Socket(COORDINATOR.substring(0, colon), Integer.parseInt(COORDINATOR.substring(colon + 1))));
+        this.in = Exceptions.rethrowChecked(() -> new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)));
+        this.out = Exceptions.rethrowChecked(() -> new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8));
+        send(Coordinator.HELLO, NAME);
+    }
+
+    public static boolean isEnabled() {
+        return COORDINATOR != null;
+    }
+
+    @Override
+    public void begin(String method) {
+        String name = name(method);
+        send(Coordinator.READY, name);
+        String reply = Exceptions.rethrowChecked(in::readLine);
+        if (!(Coordinator.GO + " " + name).equals(reply)) {
+            throw new IllegalStateException("Expected the coordinator to start " + name + ", got: " + reply);
+        }
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void end(String method) {
+        long nanos = System.nanoTime() - startNanos;
+        Histogram h = histograms.apply(method);
+        ByteBuffer buffer = ByteBuffer.allocate(h.getNeededByteBufferCapacity());
+        h.encodeIntoCompressedByteBuffer(buffer);
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        send(Coordinator.RESULT, name(method), nanos, errors.applyAsLong(method), Base64.getEncoder().encodeToString(bytes));
+    }
+
+    /**
+     * Tells the coordinator this agent is done.
+     */
+    @Override
+    public void close() {
+        send(Coordinator.DONE);
+        Exceptions.rethrowChecked(() -> {
+            socket.close();
+            return null;
+        });
+    }
+
+    // The coordinator gets the same names as the metrics, i.e. with the test class.
+    private String name(String method) {
+        return testClass.getName() + "." + method;
+    }
+
+    private void send(Object... words) {
+        StringBuilder line = new StringBuilder();
+        for (Object word : words) {
+            line.append(line.length() == 0 ? "" : " ").append(word);
+        }
+        out.println(line);
+    }
+}
@@ -0,0 +1,107 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bytes allocated per request over a test method, as reported by
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ * <p></p>
+ * Two kinds of threads are counted:
+ * <ul>
+ *     <li>Caller threads (TestNG's workers, or the main thread for the non-blocking tests).  These
+ *     come and go with each test method, so each one accounts for itself around every invocation
+ *     (see {@link #beforeInvocation()}/{@link #afterInvocation()}).</li>
+ *     <li>Everything else, which is mostly the engines' I/O threads: Netty event loops, the
+ *     Apache reactor, the apachesync executor.  These are snapshotted when the method begins and
+ *     ends.  A thread that starts <em>and</em> dies within one method is missed.</li>
+ * </ul>
+ * The result is registered as the <code>allocationPerRequest</code> gauge, and the same bytes
+ * over the method's time as <code>allocationBytesPerSecond</code>, which is what the GC has to
+ * keep up with.
+ */
+public class AllocationProbe implements MethodProbe {
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final MetricRegistry metricRegistry;
+    private final Class<?> testClass;
+    private final ToLongFunction<String> requests;
+
+    private final Set<Long> callerThreads = ConcurrentHashMap.newKeySet();
+    private final LongAdder callerBytes = new LongAdder();
+    private final ThreadLocal<long[]> invocationStart = ThreadLocal.withInitial(() -> new long[1]);
+    private Map<Long, Long> othersAtBegin = new HashMap<>();
+    private long beginNanos;
+
+    /**
+     * @param requests the number of requests a test method made, by method name
+     */
+    public AllocationProbe(MetricRegistry metricRegistry, Class<?> testClass, ToLongFunction<String> requests) {
+        this.metricRegistry = metricRegistry;
+        this.testClass = testClass;
+        this.requests = requests;
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public static boolean isSupported() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).isThreadAllocatedMemorySupported();
+    }
+
+    @Override
+    public void begin(String method) {
+        callerBytes.reset();
+        othersAtBegin = snapshotOthers();
+        beginNanos = System.nanoTime();
+    }
+
+    public void beforeInvocation() {
+        long id = Thread.currentThread().getId();
+        callerThreads.add(id);
+        invocationStart.get()[0] = threads.getThreadAllocatedBytes(id);
+    }
+
+    public void afterInvocation() {
+        long id = Thread.currentThread().getId();
+        callerBytes.add(threads.getThreadAllocatedBytes(id) - invocationStart.get()[0]);
+    }
+
+    @Override
+    public void end(String method) {
+        long nanos = System.nanoTime() - beginNanos;
+        long bytes = callerBytes.sum();
+        for (Map.Entry<Long, Long> e : snapshotOthers().entrySet()) {
+            bytes += e.getValue() - othersAtBegin.getOrDefault(e.getKey(), 0L);
+        }
+        long count = requests.applyAsLong(method);
+        if (count == 0) {
+            return;  // e.g. a skipped test
+        }
+        long perRequest = bytes / count;
+        metricRegistry.register(MetricRegistry.name(testClass, method, "allocationPerRequest"), (Gauge<Long>) () -> perRequest);
+        long perSecond = (long) (bytes * 1e9 / nanos);
+        metricRegistry.register(MetricRegistry.name(testClass, method, "allocationBytesPerSecond"), (Gauge<Long>) () -> perSecond);
+    }
+
+    private Map<Long, Long> snapshotOthers() {
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> snapshot = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            // -1 means the thread died between the two calls
+            if (allocated[i] >= 0 && !callerThreads.contains(ids[i])) {
+                snapshot.put(ids[i], allocated[i]);
+            }
+        }
+        return snapshot;
+    }
+}
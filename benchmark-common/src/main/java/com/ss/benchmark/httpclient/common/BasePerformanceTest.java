@@ -3,16 +3,27 @@ package com.ss.benchmark.httpclient.common;
 import com.codahale.metrics.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
 import org.testng.annotations.*;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Base class for perform some rudimentary performance tests of
@@ -29,6 +40,28 @@ import java.util.function.Supplier;
  * <dd>Test the client's asynchronous mode in blocking scenarios</dd>
  * <dt>testNonBlockingAsyncXyx</dt>
  * <dd>Test the client's asynchronous mode in non-blocking scenarios</dd>
+ * <dt>testWindowedAsyncXyz</dt>
+ * <dd>Test the client's asynchronous mode with at most a window of requests in flight, a new one
+ * as each completes, for each of <code>-Dbm.window.sizes</code></dd>
+ * <dt>testOpenModelAsyncXyz</dt>
+ * <dd>Test the client's asynchronous mode with requests arriving at a fixed rate (<code>-Dbm.rate=20000/s</code>)</dd>
+ * <dt>testVirtualThreadSyncXyz</dt>
+ * <dd>Test the client's synchronous mode with thousands of callers, each on its own virtual thread (Java 21+)</dd>
+ * <dt>testMultiplexedAsyncXyz</dt>
+ * <dd>Test the client's asynchronous mode with a fixed number of requests in flight; with
+ * <code>-Dbm.protocol=h2c</code> these are streams multiplexed over a few connections</dd>
+ * <dt>testStreamingAsyncXyz</dt>
+ * <dd>Test the client's asynchronous mode reading responses of up to several GB as they arrive;
+ * reports MB/s and the peak heap and direct memory</dd>
+ * <dt>testPayloadAsyncXyz</dt>
+ * <dd>Test the client's asynchronous mode across a range of body sizes (<code>-Dbm.payload.sizes</code>)</dd>
+ * <dt>testSloAsyncXyz</dt>
+ * <dd>Search for the highest rate the client's asynchronous mode sustains within a latency SLO
+ * (<code>-Dbm.slo.latency=50ms</code>, see {@link SloSearch})</dd>
+ * <dt>testSoakAsyncMix</dt>
+ * <dd>Test the client's asynchronous mode with a mix of requests for a long time
+ * (<code>-Dbm.soak.duration=2h</code>), flagging steady growth in memory, file descriptors, threads
+ * or latency, or falling throughput (see {@link SoakMonitor})</dd>
  * </dl>
  * </dl>
  * @author sharath.srinivasa
@@ -39,11 +72,29 @@ public abstract class BasePerformanceTest {
     protected static final String HELLO_URL = "/hello";
     protected static final String MOCK_SHORT_URL = "/short";
     protected static final String MOCK_LONG_URL = "/long";
+    // followed by the number of bytes
+    protected static final String MOCK_STREAM_URL = "/stream/";
+    // followed by the number of bytes, up to 64 MB
+    protected static final String MOCK_PAYLOAD_URL = "/bytes/";
 
     protected static final String SERVER_HOST = System.getProperty("bm.host", "localhost");
     protected static final int SERVER_PORT = Integer.parseInt(System.getProperty("bm.port", "8080"));
     protected static final int DROPWIZARD_REPORTER_SECONDS =
             Integer.parseInt(System.getProperty("bm.dropwizard.seconds", "30"));
+    // 'hdr' records timings into HdrHistograms and writes .hlog/.hgrm files next to the CSVs.
+    protected static final String RECORDER = System.getProperty("bm.recorder", "dropwizard");
+    protected static final int HDR_INTERVAL_SECONDS = Integer.parseInt(System.getProperty("bm.hdr.interval.seconds", "1"));
+    // a row of throughput and latency per test method this often, in .timeseries.csv; 0 (the
+    // default) for none, as it records every timing a second time
+    protected static final int TIMESERIES_SECONDS = Integer.parseInt(System.getProperty("bm.timeseries.seconds", "0"));
+    // 'checksum' uses the engines' byte-oriented calls and checks length + CRC32 instead of String.equals.
+    protected static final boolean CHECKSUM_VALIDATION = "checksum".equals(System.getProperty("bm.validation", "string"));
+    protected static final boolean ALLOCATION = Boolean.parseBoolean(System.getProperty("bm.allocation", "true"));
+    protected static final boolean POOL_STATS = Boolean.parseBoolean(System.getProperty("bm.pool.stats", "true"));
+    protected static final boolean MEMORY_STATS = Boolean.parseBoolean(System.getProperty("bm.memory.stats", "true"));
+    protected static final boolean CPU_STATS = Boolean.parseBoolean(System.getProperty("bm.cpu.stats", "true"));
+    // 'lean' takes the harness's own per-request costs out of the way (see logStart, timer, syncGET, asyncGET).
+    protected static final boolean LEAN = "lean".equals(System.getProperty("bm.harness", "standard"));
 
     public static class BlockingVars {
         protected static final int EXECUTIONS = 5_000;
@@ -54,21 +105,109 @@ public abstract class BasePerformanceTest {
         static final int EXECUTIONS = 1_000;
     }
 
+    public static class WindowVars {
+        // requests in flight at once, one test per size
+        static final String SIZES = System.getProperty("bm.window.sizes", "1,10,50,200,1000");
+        static final int EXECUTIONS = Integer.parseInt(System.getProperty("bm.window.executions", "10000"));
+    }
+
+    public static class OpenModelVars {
+        // e.g. 20000/s; the open-model tests are skipped unless this is set.
+        static final String RATE = System.getProperty("bm.rate");
+        static final int SECONDS = Integer.parseInt(System.getProperty("bm.rate.seconds", "30"));
+    }
+
+    public static class VirtualThreadVars {
+        // TestNG's threadPoolSize can only give us platform threads, so these tests start their own.
+        static final int EXECUTIONS = Integer.parseInt(System.getProperty("bm.virtual.executions", "50000"));
+        static final int WORKERS = Integer.parseInt(System.getProperty("bm.virtual.workers", "2000"));
+    }
+
+    public static class MultiplexVars {
+        static final int EXECUTIONS = Integer.parseInt(System.getProperty("bm.multiplex.executions", "10000"));
+    }
+
+    public static class StreamingVars {
+        // Response sizes, e.g. 1m,256m,4g (see ByteSizes).  Only the Netty mock service streams.
+        static final String SIZES = System.getProperty("bm.stream.sizes", "1m,64m,512m");
+        static final int EXECUTIONS = Integer.parseInt(System.getProperty("bm.stream.executions", "10"));
+        static final int CONCURRENCY = Integer.parseInt(System.getProperty("bm.stream.concurrency", "1"));
+    }
+
+    public static class PayloadVars {
+        // Body sizes, 64 bytes to 16 MB in powers of 4 by default (see ByteSizes).
+        static final String SIZES = System.getProperty("bm.payload.sizes", "64,256,1k,4k,16k,64k,256k,1m,4m,16m");
+        static final int EXECUTIONS = Integer.parseInt(System.getProperty("bm.payload.executions", "1000"));
+        static final int CONCURRENCY = Integer.parseInt(System.getProperty("bm.payload.concurrency", "10"));
+        // Big bodies get fewer requests: about this many bytes per size, but at least MIN_EXECUTIONS.
+        static final long BYTES = ByteSizes.parse(System.getProperty("bm.payload.bytes", "1g"));
+        static final int MIN_EXECUTIONS = 10;
+
+        static int executions(int size) {
+            return (int) Math.max(MIN_EXECUTIONS, Math.min(EXECUTIONS, BYTES / Math.max(1, size)));
+        }
+    }
+
+    public static class SloVars {
+        // e.g. 50ms; the SLO tests are skipped unless this is set.
+        static final String LATENCY = System.getProperty("bm.slo.latency");
+        static final double PERCENTILE = Double.parseDouble(System.getProperty("bm.slo.percentile", "99"));
+        // the fraction of requests that may fail
+        static final double ERRORS = Double.parseDouble(System.getProperty("bm.slo.errors", "0.001"));
+        static final String START = System.getProperty("bm.slo.start", "500/s");
+        static final String MAX = System.getProperty("bm.slo.max", "1000000/s");
+        static final double GROWTH = Double.parseDouble(System.getProperty("bm.slo.growth", "2"));
+        static final double PRECISION = Double.parseDouble(System.getProperty("bm.slo.precision", "0.05"));
+        // how long each step holds its rate
+        static final int SECONDS = Integer.parseInt(System.getProperty("bm.slo.seconds", "10"));
+    }
+
+    public static class SoakVars {
+        // e.g. 2h; the soak test is skipped unless this is set.
+        static final String DURATION = System.getProperty("bm.soak.duration");
+        static final int INTERVAL_SECONDS = Integer.parseInt(System.getProperty("bm.soak.interval.seconds", "10"));
+        // requests in flight at once
+        static final int WINDOW = Integer.parseInt(System.getProperty("bm.soak.window", "50"));
+        // how many of each, in turn: short GET, short POST, long POST
+        static final String MIX = System.getProperty("bm.soak.mix", "8,1,1");
+        // the fraction of the run left out of the trends
+        static final double WARMUP = Double.parseDouble(System.getProperty("bm.soak.warmup", "0.1"));
+        // how much a column may grow (or requests per second fall) over the run before it's flagged
+        static final double GROWTH = Double.parseDouble(System.getProperty("bm.soak.growth", "0.1"));
+    }
+
     private static final Logger LOGGER = LoggerFactory.getLogger(BasePerformanceTest.class);
 
     protected final MetricRegistry metricRegistry = new MetricRegistry();
     protected final ScheduledReporter reporter = ConsoleReporter.forRegistry(metricRegistry).convertDurationsTo(TimeUnit.MILLISECONDS).build();
     private ScheduledReporter csvReporter;
+    private File csvDir;
+    private HdrHistogramLog hdrLog;
+    private TimeSeriesLog timeSeries;
 
     // These blockingLatches are for the blocking cases.
     private ConcurrentHashMap<String, CountDownLatch> blockingLatches = new ConcurrentHashMap<>();
 
     private Set<CountDownLatch> nonBlockingLatches = new HashSet<>();
 
+    // The lean harness's metrics for the method under way, looked up once.
+    private volatile MethodMetrics methodMetrics;
+
+    // Measurements that span all the invocations of a test method.
+    private final List<MethodProbe> probes = new ArrayList<>();
+    private AllocationProbe allocationProbe;
+    private AgentProbe agentProbe;
+    // read by the requests, for their JFR events
+    private volatile String currentMethod;
+    // whether the server answers MOCK_STREAM_URL; asked the first time a streaming test runs
+    private Boolean streaming;
+
     /**
      * HTTP client under test.
      */
     private HttpClientEngine client;
+    // e.g. reactornetty, for the JFR events; null unless recording
+    private String engine;
 
     /**
      * HTTP client libraries implement this to be tested.
@@ -77,6 +216,11 @@ public abstract class BasePerformanceTest {
 
     @BeforeTest
     public void beforeTest() {
+        client = getClient();
+        if (!client.supports(HttpClientEngine.PROTOCOL)) {
+            throw new SkipException(client.getClass().getName() + " doesn't speak " + HttpClientEngine.PROTOCOL);
+        }
+
         // output metrics on a schedule
         if (DROPWIZARD_REPORTER_SECONDS > 0) {
             reporter.start(DROPWIZARD_REPORTER_SECONDS, TimeUnit.SECONDS);
@@ -89,31 +233,86 @@ public abstract class BasePerformanceTest {
         if (csvParentDir.isFile()) {
             throw new RuntimeException("Expected " + csvParentDir.getAbsolutePath() + " to be a directory.");
         }
-        File csvDir = new File(csvParentDir, Instant.now().toString());
+        csvDir = new File(csvParentDir, Instant.now().toString());
         if (!csvDir.mkdirs()) {
             throw new RuntimeException("Could not create the directory:  " + csvDir.getAbsolutePath());
         }
         csvReporter = CsvReporter.forRegistry(metricRegistry).convertDurationsTo(TimeUnit.MILLISECONDS).build(csvDir);
         csvReporter.start(365, TimeUnit.DAYS);  // the goal is to just get the end numbers.
 
-        client = getClient();
+        // an agent sends the coordinator its histograms
+        if ("hdr".equals(RECORDER) || AgentProbe.isEnabled()) {
+            hdrLog = new HdrHistogramLog(csvDir, HDR_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+
+        if (AgentProbe.isEnabled()) {
+            agentProbe = new AgentProbe(
+                    this.getClass(),
+                    method -> hdrLog.reservoir(MetricRegistry.name(this.getClass(), method, "timing")).sample(),
+                    method -> {
+                        Counter errors = metricRegistry.getCounters().get(MetricRegistry.name(this.getClass(), method, "errorRate"));
+                        return errors == null ? 0 : errors.getCount();
+                    });
+            probes.add(agentProbe);
+        }
+        if (JfrProbe.isEnabled()) {
+            engine = this.getClass().getPackage().getName().replaceAll(".*\\.", "");
+            probes.add(new JfrProbe(csvDir, this.getClass()));
+        }
+        probes.add(new ThroughputProbe(metricRegistry, this.getClass(), this::requests));
+        if (TIMESERIES_SECONDS > 0) {
+            timeSeries = new TimeSeriesLog(csvDir, metricRegistry, this.getClass(), TIMESERIES_SECONDS, TimeUnit.SECONDS);
+            probes.add(timeSeries);
+        }
+        if (ALLOCATION && AllocationProbe.isSupported()) {
+            allocationProbe = new AllocationProbe(metricRegistry, this.getClass(), this::requests);
+            probes.add(allocationProbe);
+        }
+        if (MEMORY_STATS) {
+            probes.add(new MemoryProbe(metricRegistry, this.getClass(), this::requests));
+        }
+        if (CPU_STATS && CpuProbe.isSupported()) {
+            probes.add(new CpuProbe(metricRegistry, this.getClass(), this::requests));
+        }
 
         client.createClient(SERVER_HOST, SERVER_PORT);
+
+        if (ServerStatsProbe.isSupported(() -> client.blockingGET(ServerStatsProbe.PATH))) {
+            probes.add(new ServerStatsProbe(metricRegistry, this.getClass(),
+                    () -> client.blockingGET(ServerStatsProbe.PATH), this::requests));
+        }
+        if (POOL_STATS && PoolStatsProbe.isSupported(client)) {
+            probes.add(new PoolStatsProbe(metricRegistry, this.getClass(), client::poolStats, this::requests));
+        }
     }
 
     @AfterTest
     public void afterTest() throws IOException {
+        switchMethod(null);
+        if (agentProbe != null) {
+            agentProbe.close();
+        }
         reporter.report();
         reporter.stop();
         reporter.close();
         csvReporter.report();
         csvReporter.stop();
         csvReporter.close();
+        if (hdrLog != null) {
+            hdrLog.close();
+        }
+        if (timeSeries != null) {
+            timeSeries.close();
+        }
         client.close();
     }
 
     @BeforeMethod
-    public void beforeMethod() {
+    public void beforeMethod(Method m, Object[] params) {
+        switchMethod(methodName(m, params));
+        if (allocationProbe != null) {
+            allocationProbe.beforeInvocation();
+        }
     }
 
     @AfterMethod
@@ -128,6 +327,9 @@ public abstract class BasePerformanceTest {
             }
             return null;
         });
+        if (allocationProbe != null) {
+            allocationProbe.afterInvocation();
+        }
         LOGGER.debug("Completed");
     }
 
@@ -135,14 +337,14 @@ public abstract class BasePerformanceTest {
     public void testWarmupCache(Method m) {
         String method = m.getName();
 
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         for (int i = 0; i < HttpClientEngine.MAX_CONNECTION_POOL_SIZE; i++) {
             syncGET(
                     MOCK_SHORT_URL,
                     Payloads.SHORT,
-                    metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                    metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                    timer(method),
+                    errors(method));
         }
     }
 
@@ -150,139 +352,598 @@ public abstract class BasePerformanceTest {
     public void testBlockingSyncShortGET(Method m) {
         String method = m.getName();
 
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         syncGET(
                 MOCK_SHORT_URL,
                 Payloads.SHORT,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 1, invocationCount = BlockingVars.EXECUTIONS, threadPoolSize = BlockingVars.WORKERS, groups = {"blocking"})
     public void testBlockingSyncShortShortPOST(Method m) {
         String method = m.getName();
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         syncPOST(MOCK_SHORT_URL,
                 Payloads.SHORT,
                 Payloads.SHORT,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 1, invocationCount = BlockingVars.EXECUTIONS, threadPoolSize = BlockingVars.WORKERS, groups = {"blocking", "sync"})
     public void testBlockingSyncShortLongPOST(Method m) {
         String method = m.getName();
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         syncPOST(MOCK_LONG_URL,
                 Payloads.SHORT,
                 Payloads.LONG,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 1, invocationCount = BlockingVars.EXECUTIONS, threadPoolSize = BlockingVars.WORKERS, groups = {"blocking", "sync"})
     public void testBlockingSyncLongLongPOST(Method m) {
         String method = m.getName();
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         syncPOST(MOCK_LONG_URL,
                 Payloads.LONG,
                 Payloads.LONG,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 1, invocationCount = BlockingVars.EXECUTIONS, threadPoolSize = BlockingVars.WORKERS, groups = {"locking", "async"})
     public void testBlockingAsyncShortGET(Method m) {
         String method = m.getName();
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         blockingAsyncGET(
                 MOCK_SHORT_URL,
                 Payloads.SHORT,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 1, invocationCount = BlockingVars.EXECUTIONS, threadPoolSize = BlockingVars.WORKERS, groups = {"blocking", "async"})
     public void testBlockingAsyncShortShortPOST(Method m) {
         String method = m.getName();
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         blockingAsyncPOST(MOCK_SHORT_URL,
                 Payloads.SHORT,
                 Payloads.SHORT,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 1, invocationCount = BlockingVars.EXECUTIONS, threadPoolSize = BlockingVars.WORKERS, groups = {"blocking", "async"})
     public void testBlockingAsyncShortLongPOST(Method m) {
         String method = m.getName();
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         blockingAsyncPOST(MOCK_LONG_URL,
                 Payloads.SHORT,
                 Payloads.LONG,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 1, invocationCount = BlockingVars.EXECUTIONS, threadPoolSize = BlockingVars.WORKERS, groups = {"blocking", "async"})
     public void testBlockingAsyncLongLongPOST(Method m) {
         String method = m.getName();
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         blockingAsyncPOST(MOCK_LONG_URL,
                 Payloads.LONG,
                 Payloads.LONG,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 2, dataProvider = "nonblocking-executions", groups = {"nonblocking", "async"})
     public void testNonBlockingAsyncShortGET(Method m, String executionSizeName, Integer executions) {
         String method = parameterizedName(m, executionSizeName);
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         nonBlockingAsyncGET(
                 executions,
                 MOCK_SHORT_URL,
                 Payloads.SHORT,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
     }
 
     @Test(priority = 2, dataProvider = "nonblocking-executions", groups = {"nonblocking", "async"})
     public void testNonBlockingAsyncShortShortPOST(Method m, String executionSizeName, Integer executions) {
         String method = parameterizedName(m, executionSizeName);
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         nonBlockingAsyncPOST(
                 executions,
                 MOCK_SHORT_URL,
                 Payloads.SHORT,
                 Payloads.SHORT,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
 
     }
 
     @Test(priority = 2, dataProvider = "nonblocking-executions", groups = {"nonblocking", "async"})
     public void testNonBlockingAsyncLongLongPOST(Method m, String executionSizeName, Integer executions) {
         String method = parameterizedName(m, executionSizeName);
-        LOGGER.debug("Start " + method);
+        logStart(method);
 
         nonBlockingAsyncPOST(
                 executions,
                 MOCK_LONG_URL,
                 Payloads.LONG,
                 Payloads.LONG,
-                metricRegistry.timer(MetricRegistry.name(this.getClass(), method, "timing")),
-                metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate")));
+                timer(method),
+                errors(method));
+    }
+
+    @Test(priority = 2, dataProvider = "window-sizes", groups = {"windowed", "async"})
+    public void testWindowedAsyncShortGET(Method m, String windowName, Integer window) {
+        String method = parameterizedName(m, windowName);
+        logStart(method);
+
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        CountDownLatch latch = new CountDownLatch(WindowVars.EXECUTIONS);
+        nonBlockingLatches.add(latch);
+        inFlight(window, WindowVars.EXECUTIONS, () ->
+                asyncGET(MOCK_SHORT_URL, Payloads.SHORT, System.nanoTime(), latch, timer, errors));
+    }
+
+    @Test(priority = 2, dataProvider = "window-sizes", groups = {"windowed", "async"})
+    public void testWindowedAsyncShortShortPOST(Method m, String windowName, Integer window) {
+        String method = parameterizedName(m, windowName);
+        logStart(method);
+
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        CountDownLatch latch = new CountDownLatch(WindowVars.EXECUTIONS);
+        nonBlockingLatches.add(latch);
+        inFlight(window, WindowVars.EXECUTIONS, () ->
+                asyncPOST(MOCK_SHORT_URL, Payloads.SHORT, Payloads.SHORT, System.nanoTime(), latch, timer, errors));
+    }
+
+    @Test(priority = 2, dataProvider = "window-sizes", groups = {"windowed", "async"})
+    public void testWindowedAsyncLongLongPOST(Method m, String windowName, Integer window) {
+        String method = parameterizedName(m, windowName);
+        logStart(method);
+
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        CountDownLatch latch = new CountDownLatch(WindowVars.EXECUTIONS);
+        nonBlockingLatches.add(latch);
+        inFlight(window, WindowVars.EXECUTIONS, () ->
+                asyncPOST(MOCK_LONG_URL, Payloads.LONG, Payloads.LONG, System.nanoTime(), latch, timer, errors));
+    }
+
+    @Test(priority = 3, groups = {"openmodel", "async"})
+    public void testOpenModelAsyncShortGET(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        openModelAsyncGET(
+                openModelLoad(),
+                MOCK_SHORT_URL,
+                Payloads.SHORT,
+                timer(method),
+                errors(method));
+    }
+
+    @Test(priority = 3, groups = {"openmodel", "async"})
+    public void testOpenModelAsyncShortShortPOST(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        openModelAsyncPOST(
+                openModelLoad(),
+                MOCK_SHORT_URL,
+                Payloads.SHORT,
+                Payloads.SHORT,
+                timer(method),
+                errors(method));
+    }
+
+    @Test(priority = 3, groups = {"openmodel", "async"})
+    public void testOpenModelAsyncLongLongPOST(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        openModelAsyncPOST(
+                openModelLoad(),
+                MOCK_LONG_URL,
+                Payloads.LONG,
+                Payloads.LONG,
+                timer(method),
+                errors(method));
+    }
+
+    @Test(priority = 5, dataProvider = "concurrent-streams", groups = {"multiplexed", "async"})
+    public void testMultiplexedAsyncShortGET(Method m, String streamsName, Integer streams) {
+        String method = parameterizedName(m, streamsName);
+        logStart(method);
+
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        CountDownLatch latch = new CountDownLatch(MultiplexVars.EXECUTIONS);
+        nonBlockingLatches.add(latch);
+        inFlight(streams, MultiplexVars.EXECUTIONS, () ->
+                asyncGET(MOCK_SHORT_URL, Payloads.SHORT, System.nanoTime(), latch, timer, errors));
+    }
+
+    @Test(priority = 5, dataProvider = "concurrent-streams", groups = {"multiplexed", "async"})
+    public void testMultiplexedAsyncShortShortPOST(Method m, String streamsName, Integer streams) {
+        String method = parameterizedName(m, streamsName);
+        logStart(method);
+
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        CountDownLatch latch = new CountDownLatch(MultiplexVars.EXECUTIONS);
+        nonBlockingLatches.add(latch);
+        inFlight(streams, MultiplexVars.EXECUTIONS, () ->
+                asyncPOST(MOCK_SHORT_URL, Payloads.SHORT, Payloads.SHORT, System.nanoTime(), latch, timer, errors));
+    }
+
+    @Test(priority = 5, dataProvider = "concurrent-streams", groups = {"multiplexed", "async"})
+    public void testMultiplexedAsyncLongLongPOST(Method m, String streamsName, Integer streams) {
+        String method = parameterizedName(m, streamsName);
+        logStart(method);
+
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        CountDownLatch latch = new CountDownLatch(MultiplexVars.EXECUTIONS);
+        nonBlockingLatches.add(latch);
+        inFlight(streams, MultiplexVars.EXECUTIONS, () ->
+                asyncPOST(MOCK_LONG_URL, Payloads.LONG, Payloads.LONG, System.nanoTime(), latch, timer, errors));
+    }
+
+    // Keeps `window` requests going: the next one starts as soon as any completes.
+    private void inFlight(int window, int executions, Supplier<CompletableFuture<?>> request) {
+        Semaphore slots = new Semaphore(window);
+        for (int i = 0; i < executions; i++) {
+            slots.acquireUninterruptibly();
+            request.get().whenComplete((r, ex) -> slots.release());
+        }
+    }
+
+    @Test(priority = 6, dataProvider = "stream-sizes", groups = {"streaming", "async"})
+    public void testStreamingAsyncGET(Method m, String sizeName, Long size) {
+        String method = parameterizedName(m, sizeName);
+        logStart(method);
+
+        requireStreaming();
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        CountDownLatch latch = new CountDownLatch(StreamingVars.EXECUTIONS);
+        LongAdder bytes = new LongAdder();
+        long start = System.nanoTime();
+        try (PeakMemory peak = new PeakMemory()) {
+            inFlight(StreamingVars.CONCURRENCY, StreamingVars.EXECUTIONS, () ->
+                    doAsync(
+                            () -> client.nonblockingStreamGET(MOCK_STREAM_URL + size).thenApply(read -> {
+                                bytes.add(read);
+                                return read;
+                            }),
+                            size::equals,
+                            MOCK_STREAM_URL + size,
+                            null,
+                            System.nanoTime(),
+                            latch,
+                            timer,
+                            errors
+                    ));
+            await(latch);
+            registerThroughput(method, bytes.sum(), start);
+            metricRegistry.register(MetricRegistry.name(this.getClass(), method, "peakHeapBytes"), (Gauge<Long>) peak::heapBytes);
+            metricRegistry.register(MetricRegistry.name(this.getClass(), method, "peakDirectBytes"), (Gauge<Long>) peak::directBytes);
+        }
+    }
+
+    @Test(priority = 7, dataProvider = "payload-sizes", groups = {"payload", "async"})
+    public void testPayloadAsyncGET(Method m, String sizeName, Integer size) {
+        String method = parameterizedName(m, sizeName);
+        logStart(method);
+
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        String expected = Payloads.of(size);
+        int executions = PayloadVars.executions(size);
+        CountDownLatch latch = new CountDownLatch(executions);
+        long start = System.nanoTime();
+        inFlight(PayloadVars.CONCURRENCY, executions, () ->
+                asyncGET(MOCK_PAYLOAD_URL + size, expected, System.nanoTime(), latch, timer, errors));
+        await(latch);
+        registerThroughput(method, timer.getCount() * size, start);
+    }
+
+    // The same number of bytes both ways.
+    @Test(priority = 7, dataProvider = "payload-sizes", groups = {"payload", "async"})
+    public void testPayloadAsyncPOST(Method m, String sizeName, Integer size) {
+        String method = parameterizedName(m, sizeName);
+        logStart(method);
+
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        String payload = Payloads.of(size);
+        int executions = PayloadVars.executions(size);
+        CountDownLatch latch = new CountDownLatch(executions);
+        long start = System.nanoTime();
+        inFlight(PayloadVars.CONCURRENCY, executions, () ->
+                asyncPOST(MOCK_PAYLOAD_URL + size, payload, payload, System.nanoTime(), latch, timer, errors));
+        await(latch);
+        registerThroughput(method, 2 * timer.getCount() * size, start);
+    }
+
+    @Test(priority = 8, groups = {"slo", "async"})
+    public void testSloAsyncShortGET(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        searchSlo(method, (intendedStart, latch, timer, errors) ->
+                asyncGET(MOCK_SHORT_URL, Payloads.SHORT, intendedStart, latch, timer, errors));
+    }
+
+    @Test(priority = 8, groups = {"slo", "async"})
+    public void testSloAsyncShortShortPOST(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        searchSlo(method, (intendedStart, latch, timer, errors) ->
+                asyncPOST(MOCK_SHORT_URL, Payloads.SHORT, Payloads.SHORT, intendedStart, latch, timer, errors));
+    }
+
+    @Test(priority = 8, groups = {"slo", "async"})
+    public void testSloAsyncLongLongPOST(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        searchSlo(method, (intendedStart, latch, timer, errors) ->
+                asyncPOST(MOCK_LONG_URL, Payloads.LONG, Payloads.LONG, intendedStart, latch, timer, errors));
+    }
+
+    // One request of an SLO step, timed from when it was meant to start.
+    private interface SloRequest {
+        void send(long intendedStart, CountDownLatch latch, Timer timer, Counter errors);
+    }
+
+    // Each step gets its own exact (HDR) timer, and waits for its stragglers before the next
+    // one starts.  Registers the best rate as sloRequestsPerSecond, and the SLO's percentile at
+    // that rate as sloLatencyMillis.
+    private void searchSlo(String method, SloRequest request) {
+        if (SloVars.LATENCY == null) {
+            throw new SkipException("SLO tests need a latency limit, e.g. -Dbm.slo.latency=50ms");
+        }
+        SloSearch search = new SloSearch(
+                SloVars.PERCENTILE,
+                Durations.parseNanos(SloVars.LATENCY),
+                SloVars.ERRORS,
+                ConstantRateLoad.parse(SloVars.START).getRatePerSecond(),
+                SloVars.GROWTH,
+                SloVars.PRECISION,
+                ConstantRateLoad.parse(SloVars.MAX).getRatePerSecond());
+        LOGGER.info(method + ": looking for the highest rate with " + search);
+
+        double best = search.search(rate -> {
+            ConstantRateLoad load = new ConstantRateLoad(rate);
+            int executions = load.executionsFor(SloVars.SECONDS, TimeUnit.SECONDS);
+            Timer timer = new Timer(new HdrReservoir());
+            Counter errors = new Counter();
+            CountDownLatch latch = new CountDownLatch(executions);
+            load.fire(executions, intendedStart -> request.send(intendedStart, latch, timer, errors));
+            await(latch);
+            return new SloSearch.Step(rate, timer.getSnapshot(), executions, errors.getCount());
+        });
+
+        metricRegistry.register(MetricRegistry.name(this.getClass(), method, "sloRequestsPerSecond"), (Gauge<Double>) () -> best);
+        search.getSteps().stream()
+                .filter(step -> step.rate() == best && search.meets(step))
+                .findFirst()
+                .ifPresent(step -> {
+                    double millis = step.latency(SloVars.PERCENTILE) / 1e6;
+                    metricRegistry.register(MetricRegistry.name(this.getClass(), method, "sloLatencyMillis"), (Gauge<Double>) () -> millis);
+                });
+        LOGGER.info(String.format("%s: %.1f req/s", method, best));
+    }
+
+    @Test(priority = 9, groups = {"soak", "async"})
+    public void testSoakAsyncMix(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        if (SoakVars.DURATION == null) {
+            throw new SkipException("Soak tests need a duration, e.g. -Dbm.soak.duration=2h");
+        }
+        long nanos = Durations.parseNanos(SoakVars.DURATION);
+        Counter errors = errors(method);
+        SoakMonitor monitor = new SoakMonitor(
+                new File(csvDir, MetricRegistry.name(this.getClass(), method, "soak") + ".csv"),
+                errors::getCount,
+                SoakVars.INTERVAL_SECONDS,
+                TimeUnit.SECONDS,
+                nanos / 1e9 * SoakVars.WARMUP);
+        String name = MetricRegistry.name(this.getClass(), method, "timing");
+        Timer timer = metricRegistry.timer(name, () -> new Timer(monitor.reservoir(reservoir(name))));
+
+        List<Supplier<CompletableFuture<?>>> scenarios = Arrays.asList(
+                () -> asyncGET(MOCK_SHORT_URL, Payloads.SHORT, System.nanoTime(), null, timer, errors),
+                () -> asyncPOST(MOCK_SHORT_URL, Payloads.SHORT, Payloads.SHORT, System.nanoTime(), null, timer, errors),
+                () -> asyncPOST(MOCK_LONG_URL, Payloads.LONG, Payloads.LONG, System.nanoTime(), null, timer, errors));
+        String[] weights = SoakVars.MIX.split(",");
+        List<Supplier<CompletableFuture<?>>> mix = new ArrayList<>();
+        for (int i = 0; i < scenarios.size() && i < weights.length; i++) {
+            mix.addAll(Collections.nCopies(Integer.parseInt(weights[i].trim()), scenarios.get(i)));
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("Expected weights for short GET, short POST and long POST, e.g. 8,1,1, not " + SoakVars.MIX);
+        }
+        LOGGER.info(method + ": " + SoakVars.DURATION + " of " + SoakVars.MIX + " with " + SoakVars.WINDOW + " in flight");
+
+        monitor.start();
+        inFlightFor(SoakVars.WINDOW, nanos, mix);
+        List<SoakMonitor.Trend> trends = monitor.stop(SoakVars.GROWTH);
+
+        SoakMonitor.write(new File(csvDir, MetricRegistry.name(this.getClass(), method, "trends") + ".csv"), trends);
+        trends.forEach(trend -> LOGGER.info(method + ": " + trend + (trend.isFlagged() ? " FLAGGED" : "")));
+        List<SoakMonitor.Trend> flagged = trends.stream().filter(SoakMonitor.Trend::isFlagged).collect(Collectors.toList());
+        metricRegistry.register(MetricRegistry.name(this.getClass(), method, "soakFlags"), (Gauge<Integer>) flagged::size);
+        if (!flagged.isEmpty()) {
+            throw new AssertionError(method + " over " + SoakVars.DURATION + ": " + flagged);
+        }
+    }
+
+    // Like inFlight, but for a while rather than a number of requests, taking them from requests in
+    // turn.  Waits for the last ones, as there's no latch.
+    private void inFlightFor(int window, long nanos, List<Supplier<CompletableFuture<?>>> requests) {
+        Semaphore slots = new Semaphore(window);
+        long deadline = System.nanoTime() + nanos;
+        for (long i = 0; System.nanoTime() - deadline < 0; i++) {
+            slots.acquireUninterruptibly();
+            requests.get((int) (i % requests.size())).get().whenComplete((r, ex) -> slots.release());
+        }
+        slots.acquireUninterruptibly(window);
+    }
+
+    private void await(CountDownLatch latch) {
+        Exceptions.rethrowChecked(() -> {
+            latch.await();
+            return null;
+        });
+    }
+
+    // Body bytes moved since startNanos, as megabytesPerSecond.
+    private void registerThroughput(String method, long bytes, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        double megabytesPerSecond = bytes / (1024.0 * 1024.0) / seconds;
+        metricRegistry.register(MetricRegistry.name(this.getClass(), method, "megabytesPerSecond"), (Gauge<Double>) () -> megabytesPerSecond);
+    }
+
+    private void requireStreaming() {
+        if (streaming == null) {
+            try {
+                streaming = client.nonblockingStreamGET(MOCK_STREAM_URL + 1).get() == 1;
+            } catch (Exception e) {
+                LOGGER.debug("No " + MOCK_STREAM_URL + " on this server", e);
+                streaming = false;
+            }
+        }
+        if (!streaming) {
+            throw new SkipException("Streaming tests need the Netty mock service (-Dmock.server=netty)");
+        }
+    }
+
+    @Test(priority = 4, groups = {"virtual", "sync"})
+    public void testVirtualThreadSyncShortGET(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        requireVirtualThreads();
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        onVirtualThreads(() -> syncGET(MOCK_SHORT_URL, Payloads.SHORT, timer, errors));
+    }
+
+    @Test(priority = 4, groups = {"virtual", "sync"})
+    public void testVirtualThreadSyncShortShortPOST(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        requireVirtualThreads();
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        onVirtualThreads(() -> syncPOST(MOCK_SHORT_URL, Payloads.SHORT, Payloads.SHORT, timer, errors));
+    }
+
+    @Test(priority = 4, groups = {"virtual", "sync"})
+    public void testVirtualThreadSyncShortLongPOST(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        requireVirtualThreads();
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        onVirtualThreads(() -> syncPOST(MOCK_LONG_URL, Payloads.SHORT, Payloads.LONG, timer, errors));
+    }
+
+    @Test(priority = 4, groups = {"virtual", "sync"})
+    public void testVirtualThreadSyncLongLongPOST(Method m) {
+        String method = m.getName();
+        logStart(method);
+
+        requireVirtualThreads();
+        Timer timer = timer(method);
+        Counter errors = errors(method);
+        onVirtualThreads(() -> syncPOST(MOCK_LONG_URL, Payloads.LONG, Payloads.LONG, timer, errors));
+    }
+
+    // VirtualThreadVars.WORKERS virtual threads share VirtualThreadVars.EXECUTIONS requests, each
+    // making its next one as soon as the last returns, like the testBlocking* workers do.
+    private void onVirtualThreads(Runnable request) {
+        AtomicInteger remaining = new AtomicInteger(VirtualThreadVars.EXECUTIONS);
+        ExecutorService callers = VirtualThreads.newPerTaskExecutor();
+        try {
+            for (int i = 0; i < VirtualThreadVars.WORKERS; i++) {
+                callers.execute(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        request.run();
+                    }
+                });
+            }
+        } finally {
+            callers.shutdown();
+            Exceptions.rethrowChecked(() -> callers.awaitTermination(1, TimeUnit.HOURS));
+        }
+    }
+
+    // Before any metrics get registered, so a skipped test doesn't show up in the report.
+    private void requireVirtualThreads() {
+        if (!VirtualThreads.isSupported()) {
+            throw new SkipException("Virtual threads need Java 21+");
+        }
+    }
+
+    private ConstantRateLoad openModelLoad() {
+        if (OpenModelVars.RATE == null) {
+            throw new SkipException("Open-model tests need a target rate, e.g. -Dbm.rate=20000/s");
+        }
+        return ConstantRateLoad.parse(OpenModelVars.RATE);
+    }
+
+    private void openModelAsyncGET(
+            ConstantRateLoad load,
+            String url,
+            String expectedResponsePayload,
+            Timer timer,
+            Counter errors
+    ) {
+        int executions = load.executionsFor(OpenModelVars.SECONDS, TimeUnit.SECONDS);
+        CountDownLatch latch = new CountDownLatch(executions);
+        nonBlockingLatches.add(latch);
+        load.fire(executions, intendedStart ->
+                asyncGET(url, expectedResponsePayload, intendedStart, latch, timer, errors));
+    }
+
+    private void openModelAsyncPOST(
+            ConstantRateLoad load,
+            String url,
+            String payload,
+            String expectedResponsePayload,
+            Timer timer,
+            Counter errors
+    ) {
+        int executions = load.executionsFor(OpenModelVars.SECONDS, TimeUnit.SECONDS);
+        CountDownLatch latch = new CountDownLatch(executions);
+        nonBlockingLatches.add(latch);
+        load.fire(executions, intendedStart ->
+                asyncPOST(url, payload, expectedResponsePayload, intendedStart, latch, timer, errors));
     }
 
     private void nonBlockingAsyncGET(
@@ -295,7 +956,7 @@ public abstract class BasePerformanceTest {
         CountDownLatch latch = new CountDownLatch(executions);
         nonBlockingLatches.add(latch);
         for (int i = 0; i < executions; i++) {
-            asyncGET(url, expectedResponsePayload, latch, timer, errors);
+            asyncGET(url, expectedResponsePayload, System.nanoTime(), latch, timer, errors);
         }
     }
 
@@ -310,7 +971,7 @@ public abstract class BasePerformanceTest {
         CountDownLatch latch = new CountDownLatch(executions);
         nonBlockingLatches.add(latch);
         for (int i = 0; i < executions; i++) {
-            asyncPOST(url, payload, expectedResponsePayload, latch, timer, errors);
+            asyncPOST(url, payload, expectedResponsePayload, System.nanoTime(), latch, timer, errors);
         }
     }
 
@@ -320,9 +981,14 @@ public abstract class BasePerformanceTest {
             Timer timer,
             Counter errors
     ) {
+        if (LEAN) {
+            // the same wait as afterMethod's, without a latch per request
+            asyncGET(url, expectedResponsePayload, System.nanoTime(), null, timer, errors).join();
+            return;
+        }
         CountDownLatch latch = new CountDownLatch(1);
         blockingLatches.putIfAbsent(Thread.currentThread().getName(), latch);
-        asyncGET(url, expectedResponsePayload, latch, timer, errors);
+        asyncGET(url, expectedResponsePayload, System.nanoTime(), latch, timer, errors);
     }
 
     private void blockingAsyncPOST(
@@ -332,90 +998,408 @@ public abstract class BasePerformanceTest {
             Timer timer,
             Counter errors
     ) {
+        if (LEAN) {
+            asyncPOST(url, payload, expectedResponsePayload, System.nanoTime(), null, timer, errors).join();
+            return;
+        }
         CountDownLatch latch = new CountDownLatch(1);
         blockingLatches.putIfAbsent(Thread.currentThread().getName(), latch);
-        asyncPOST(url, payload, expectedResponsePayload, latch, timer, errors);
+        asyncPOST(url, payload, expectedResponsePayload, System.nanoTime(), latch, timer, errors);
     }
 
-    private void asyncGET(String url, String expectedResponsePayload, CountDownLatch latch, Timer timer, Counter errors) {
-        doAsync(
-                () -> client.nonblockingGET(url),
-                expectedResponsePayload,
-                latch,
-                timer,
-                errors
-        );
+    private CompletableFuture<?> asyncGET(String url, String expectedResponsePayload, long startNanos, CountDownLatch latch, Timer timer, Counter errors) {
+        if (LEAN) {
+            return leanAsync(false, url, null, expectedResponsePayload, startNanos, latch, timer, errors);
+        }
+        if (CHECKSUM_VALIDATION) {
+            return doAsync(
+                    () -> client.nonblockingGETBytes(url),
+                    ChecksumValidator.of(expectedResponsePayload),
+                    url,
+                    null,
+                    startNanos,
+                    latch,
+                    timer,
+                    errors
+            );
+        } else {
+            return doAsync(
+                    () -> client.nonblockingGET(url),
+                    expectedResponsePayload::equals,
+                    url,
+                    null,
+                    startNanos,
+                    latch,
+                    timer,
+                    errors
+            );
+        }
     }
 
-    private void asyncPOST(String url, String payload, String expect, CountDownLatch latch, Timer timer, Counter errors) {
-        doAsync(
-                () -> client.nonblockingPOST(url, payload),
-                expect,
-                latch,
-                timer,
-                errors
-        );
+    private CompletableFuture<?> asyncPOST(String url, String payload, String expect, long startNanos, CountDownLatch latch, Timer timer, Counter errors) {
+        if (LEAN) {
+            return leanAsync(true, url, payload, expect, startNanos, latch, timer, errors);
+        }
+        if (CHECKSUM_VALIDATION) {
+            return doAsync(
+                    () -> client.nonblockingPOSTBytes(url, payload),
+                    ChecksumValidator.of(expect),
+                    url,
+                    payload,
+                    startNanos,
+                    latch,
+                    timer,
+                    errors
+            );
+        } else {
+            return doAsync(
+                    () -> client.nonblockingPOST(url, payload),
+                    expect::equals,
+                    url,
+                    payload,
+                    startNanos,
+                    latch,
+                    timer,
+                    errors
+            );
+        }
     }
 
     private void syncGET(String url, String expectedResponsePayload, Timer timer, Counter errors) {
-        doSync(
-                () -> client.blockingGET(url),
-                expectedResponsePayload,
-                timer,
-                errors
-        );
+        if (LEAN) {
+            leanSync(false, url, null, expectedResponsePayload, timer, errors);
+            return;
+        }
+        if (CHECKSUM_VALIDATION) {
+            doSync(
+                    () -> client.blockingGETBytes(url),
+                    ChecksumValidator.of(expectedResponsePayload),
+                    url,
+                    null,
+                    timer,
+                    errors
+            );
+        } else {
+            doSync(
+                    () -> client.blockingGET(url),
+                    expectedResponsePayload::equals,
+                    url,
+                    null,
+                    timer,
+                    errors
+            );
+        }
     }
 
     private void syncPOST(String url, String payload, String expectedResponsePayload, Timer timer, Counter errors) {
-        doSync(
-                () -> client.blockingPOST(url, payload),
-                expectedResponsePayload,
-                timer,
-                errors
-        );
+        if (LEAN) {
+            leanSync(true, url, payload, expectedResponsePayload, timer, errors);
+            return;
+        }
+        if (CHECKSUM_VALIDATION) {
+            doSync(
+                    () -> client.blockingPOSTBytes(url, payload),
+                    ChecksumValidator.of(expectedResponsePayload),
+                    url,
+                    payload,
+                    timer,
+                    errors
+            );
+        } else {
+            doSync(
+                    () -> client.blockingPOST(url, payload),
+                    expectedResponsePayload::equals,
+                    url,
+                    payload,
+                    timer,
+                    errors
+            );
+        }
     }
 
     // I felt like the code below was tricky enough to not duplicate it between the (a)syncXYZ cases; however,
     // if you feel this is adversely affecting performance, we can go back to duplicating it..
-    private void doAsync(
-            Supplier<CompletableFuture<String>> op,
-            String expectedResponsePayload,
+    //
+    // startNanos is when the request was *supposed* to start.  For the open-model tests that can be
+    // earlier than now, which is the whole point (see ConstantRateLoad).
+    // latch may be null, when the caller waits on the futures instead.
+    private <T> CompletableFuture<T> doAsync(
+            Supplier<CompletableFuture<T>> op,
+            Predicate<T> validResponse,
+            String url,
+            String payload,
+            long startNanos,
             CountDownLatch latch,
             Timer timer,
             Counter errors
     ) {
-        Timer.Context ctx = timer.time();
+        RequestEvent event = requestEvent(url, payload);
         try {
-            CompletableFuture<String> cf = op.get();
-            cf.handle((result, ex) -> {
-                if (ex != null || !expectedResponsePayload.equals(result)) {
+            CompletableFuture<T> cf = op.get();
+            return cf.handle((result, ex) -> {
+                if (ex != null || !validResponse.test(result)) {
                     errors.inc();
+                    end(event, ex != null ? RequestEvent.FAILED : RequestEvent.INVALID, result);
                 } else {
-                    ctx.stop(); // the goal is to not count error cases in the timing metrics
+                    // the goal is to not count error cases in the timing metrics
+                    timer.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    end(event, RequestEvent.OK, result);
+                }
+                if (latch != null) {
+                    latch.countDown();
                 }
-                latch.countDown();
                 return result;
             });
         } catch (Exception e) {
             errors.inc();
-            latch.countDown();  // not sure on this..
+            end(event, RequestEvent.FAILED, null);
+            if (latch != null) {
+                latch.countDown();  // not sure on this..
+            }
+            return CompletableFuture.completedFuture(null);
         }
     }
 
-    private void doSync(Supplier<String> op, String expectedResponsePayload, Timer timer, Counter errors) {
+    private <T> void doSync(Supplier<T> op, Predicate<T> validResponse, String url, String payload, Timer timer, Counter errors) {
+        RequestEvent event = requestEvent(url, payload);
         Timer.Context ctx = timer.time();
-        String response = null;
+        T response = null;
+        String outcome = RequestEvent.OK;
         try {
             response = op.get();
             ctx.stop();
         } catch (Exception e) {
             LOGGER.error(e.getMessage());
+            outcome = RequestEvent.FAILED;
         } finally {
             // I guess if an exception is thrown, this will be true..
-            if (!expectedResponsePayload.equals(response)) {
+            if (!validResponse.test(response)) {
+                errors.inc();
+                if (RequestEvent.OK.equals(outcome)) {
+                    outcome = RequestEvent.INVALID;
+                }
+            }
+            end(event, outcome, response);
+        }
+    }
+
+    // doSync without the lambdas and the Timer.Context: the same timing, validation and errors.
+    private void leanSync(boolean post, String url, String payload, String expected, Timer timer, Counter errors) {
+        RequestEvent event = requestEvent(url, payload);
+        long start = System.nanoTime();
+        boolean valid = false;
+        Object response = null;
+        String outcome = RequestEvent.OK;
+        try {
+            if (CHECKSUM_VALIDATION) {
+                ByteBuffer bytes = post ? client.blockingPOSTBytes(url, payload) : client.blockingGETBytes(url);
+                timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                valid = ChecksumValidator.of(expected).test(bytes);
+                response = bytes;
+            } else {
+                String body = post ? client.blockingPOST(url, payload) : client.blockingGET(url);
+                timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                valid = expected.equals(body);
+                response = body;
+            }
+        } catch (Exception e) {
+            LOGGER.error(e.getMessage());
+            outcome = RequestEvent.FAILED;
+        }
+        if (!valid) {
+            errors.inc();
+            if (RequestEvent.OK.equals(outcome)) {
+                outcome = RequestEvent.INVALID;
+            }
+        }
+        end(event, outcome, response);
+    }
+
+    // doAsync without the lambdas; the completion is the only thing allocated.  latch may be null.
+    private CompletableFuture<?> leanAsync(boolean post, String url, String payload, String expected,
+                                           long startNanos, CountDownLatch latch, Timer timer, Counter errors) {
+        RequestEvent event = requestEvent(url, payload);
+        CompletableFuture<?> cf;
+        try {
+            if (CHECKSUM_VALIDATION) {
+                cf = post ? client.nonblockingPOSTBytes(url, payload) : client.nonblockingGETBytes(url);
+            } else {
+                cf = post ? client.nonblockingPOST(url, payload) : client.nonblockingGET(url);
+            }
+        } catch (Exception e) {
+            errors.inc();
+            end(event, RequestEvent.FAILED, null);
+            if (latch != null) {
+                latch.countDown();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        return cf.handle((result, ex) -> {
+            boolean valid = ex == null && (CHECKSUM_VALIDATION
+                    ? ChecksumValidator.of(expected).test((ByteBuffer) result)
+                    : expected.equals(result));
+            if (valid) {
+                timer.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                end(event, RequestEvent.OK, result);
+            } else {
                 errors.inc();
+                end(event, ex != null ? RequestEvent.FAILED : RequestEvent.INVALID, result);
             }
+            if (latch != null) {
+                latch.countDown();
+            }
+            return result;
+        });
+    }
+
+    // Only when recording, so the rest of the time requests don't pay for the events.
+    private RequestEvent requestEvent(String url, String payload) {
+        return engine == null ? null : RequestEvent.begin(engine, currentMethod, url, payload);
+    }
+
+    private static void end(RequestEvent event, String outcome, Object response) {
+        if (event != null) {
+            event.end(outcome, response);
+        }
+    }
+
+    // TestNG runs a method's invocations (and their @AfterMethods) before it moves on to the next
+    // method, so the first invocation of a new method marks the end of the previous one.
+    private void switchMethod(String method) {
+        // every invocation but a method's first; the lean harness skips the lock for those
+        if (LEAN && Objects.equals(method, currentMethod)) {
+            return;
         }
+        synchronizedSwitchMethod(method);
+    }
+
+    private synchronized void synchronizedSwitchMethod(String method) {
+        if (Objects.equals(method, currentMethod)) {
+            return;
+        }
+        // Cleared before the probes end and set once they've all begun, so no invocation gets
+        // past the lean fast path while a probe is still taking its baseline (or, for the
+        // agents, waiting to be told to go).
+        String previous = currentMethod;
+        currentMethod = null;
+        methodMetrics = method == null ? null : new MethodMetrics(method);
+        if (previous != null) {
+            for (MethodProbe probe : probes) {
+                probe.end(previous);
+            }
+        }
+        if (method != null) {
+            for (MethodProbe probe : probes) {
+                probe.begin(method);
+            }
+        }
+        currentMethod = method;
+    }
+
+    // Successes are timed, failures are counted.
+    private long requests(String method) {
+        Timer timer = metricRegistry.getTimers().get(MetricRegistry.name(this.getClass(), method, "timing"));
+        Counter errors = metricRegistry.getCounters().get(MetricRegistry.name(this.getClass(), method, "errorRate"));
+        return (timer == null ? 0 : timer.getCount()) + (errors == null ? 0 : errors.getCount());
+    }
+
+    private Timer timer(String method) {
+        MethodMetrics metrics = methodMetrics;
+        // repeat invocations pass the same String (Method.getName()), so equals stops at ==
+        if (LEAN && metrics != null && metrics.method.equals(method)) {
+            Timer timer = metrics.timer;
+            if (timer == null) {
+                // racing invocations get the same one from the registry
+                timer = registerTimer(method);
+                metrics.timer = timer;
+            }
+            return timer;
+        }
+        return registerTimer(method);
+    }
+
+    private Timer registerTimer(String method) {
+        String name = MetricRegistry.name(this.getClass(), method, "timing");
+        if (hdrLog == null && timeSeries == null) {
+            return metricRegistry.timer(name);
+        }
+        return metricRegistry.timer(name, () -> new Timer(reservoir(name)));
+    }
+
+    // The timer's reservoir: recorded into the HDR log and the time series when they're on.
+    private Reservoir reservoir(String name) {
+        Reservoir reservoir = hdrLog == null ? new ExponentiallyDecayingReservoir() : hdrLog.reservoir(name);
+        return timeSeries == null ? reservoir : timeSeries.reservoir(name, reservoir);
+    }
+
+    private Counter errors(String method) {
+        MethodMetrics metrics = methodMetrics;
+        if (LEAN && metrics != null && metrics.method.equals(method)) {
+            Counter errors = metrics.errors;
+            if (errors == null) {
+                errors = registerErrors(method);
+                metrics.errors = errors;
+            }
+            return errors;
+        }
+        return registerErrors(method);
+    }
+
+    // Registered on first use, so a skipped test leaves nothing behind, and a test may register
+    // its own timer first (see testSoakAsyncMix).
+    private static final class MethodMetrics {
+        private final String method;
+        private volatile Timer timer;
+        private volatile Counter errors;
+
+        MethodMetrics(String method) {
+            this.method = method;
+        }
+    }
+
+    private Counter registerErrors(String method) {
+        return metricRegistry.counter(MetricRegistry.name(this.getClass(), method, "errorRate"));
+    }
+
+    private void logStart(String method) {
+        // the concatenation happens whether or not debug is on
+        if (!LEAN || LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Start " + method);
+        }
+    }
+
+    @DataProvider(name = "concurrent-streams")
+    public static Object[][] concurrentStreams() {
+        return new Object[][] {
+                { "Streams_10"  , 10 },
+                { "Streams_100" , 100 },
+                { "Streams_1000", 1_000 }
+        };
+    }
+
+    @DataProvider(name = "window-sizes")
+    public static Object[][] windowSizes() {
+        return Arrays.stream(WindowVars.SIZES.split(","))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .map(window -> new Object[] { "Window_" + window, window })
+                .toArray(Object[][]::new);
+    }
+
+    @DataProvider(name = "stream-sizes")
+    public static Object[][] streamSizes() {
+        return Arrays.stream(StreamingVars.SIZES.split(","))
+                .map(ByteSizes::parse)
+                .map(size -> new Object[] { "Size_" + ByteSizes.format(size), size })
+                .toArray(Object[][]::new);
+    }
+
+    @DataProvider(name = "payload-sizes")
+    public static Object[][] payloadSizes() {
+        return Arrays.stream(PayloadVars.SIZES.split(","))
+                .map(ByteSizes::parse)
+                .map(size -> new Object[] { "Size_" + ByteSizes.format(size), Math.toIntExact(size) })
+                .toArray(Object[][]::new);
     }
 
     @DataProvider(name = "nonblocking-executions")
@@ -430,4 +1414,15 @@ public abstract class BasePerformanceTest {
         return m.getName() + "-" + executionSizeName;
     }
 
+    // The name the test method records its metrics under.  params are the invocation's arguments,
+    // including the injected Method; data-provided tests are named after their first String.
+    private String methodName(Method m, Object[] params) {
+        for (Object param : params) {
+            if (param instanceof String) {
+                return parameterizedName(m, (String) param);
+            }
+        }
+        return m.getName();
+    }
+
 }
@@ -0,0 +1,44 @@
+package com.ss.benchmark.httpclient.common;
+
+/**
+ * Byte counts written the short way: <code>512</code>, <code>64k</code>, <code>16m</code>,
+ * <code>2g</code>.  The units are powers of 1024.
+ */
+public class ByteSizes {
+
+    private static final String UNITS = "kmgt";
+
+    private ByteSizes() {
+    }
+
+    public static long parse(String size) {
+        String s = size.trim().toLowerCase();
+        if (s.endsWith("b")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        if (s.isEmpty()) {
+            throw new IllegalArgumentException("Not a size: '" + size + "'");
+        }
+        int unit = UNITS.indexOf(s.charAt(s.length() - 1));
+        if (unit >= 0) {
+            s = s.substring(0, s.length() - 1);
+        }
+        long value = Long.parseLong(s.trim());
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative size: '" + size + "'");
+        }
+        return value << (10 * (unit + 1));
+    }
+
+    /**
+     * The largest unit that divides the count exactly, so it parses back to the same count.
+     */
+    public static String format(long bytes) {
+        int unit = -1;
+        while (unit < UNITS.length() - 1 && bytes != 0 && bytes % 1024 == 0) {
+            bytes /= 1024;
+            unit++;
+        }
+        return unit < 0 ? Long.toString(bytes) : bytes + String.valueOf(UNITS.charAt(unit));
+    }
+}
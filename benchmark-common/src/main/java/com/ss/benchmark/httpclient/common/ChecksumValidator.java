@@ -0,0 +1,45 @@
+package com.ss.benchmark.httpclient.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Validates a response body by its length and a CRC32 computed straight off the
+ * {@link ByteBuffer}, so nothing gets decoded or copied.  Way cheaper than building a String and
+ * calling equals on it when the body is {@link Payloads#LONG}.
+ */
+public class ChecksumValidator implements Predicate<ByteBuffer> {
+
+    private static final Map<String, ChecksumValidator> CACHE = new ConcurrentHashMap<>();
+
+    private final int length;
+    private final long crc;
+
+    private ChecksumValidator(byte[] expected) {
+        this.length = expected.length;
+        CRC32 crc32 = new CRC32();
+        crc32.update(expected);
+        this.crc = crc32.getValue();
+    }
+
+    /**
+     * The payloads are constants, so we only compute their checksums once.
+     */
+    public static ChecksumValidator of(String expectedPayload) {
+        return CACHE.computeIfAbsent(expectedPayload, p -> new ChecksumValidator(p.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public boolean test(ByteBuffer body) {
+        if (body == null || body.remaining() != length) {
+            return false;
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(body.duplicate());
+        return crc32.getValue() == crc;
+    }
+}
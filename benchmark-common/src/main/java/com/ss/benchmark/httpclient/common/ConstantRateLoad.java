@@ -0,0 +1,82 @@
+package com.ss.benchmark.httpclient.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-model load generator.  Requests are issued on a fixed schedule regardless of
+ * how long earlier requests take, so a stalled client does not slow the load down.
+ * <p></p>
+ * Each request is handed its <em>intended</em> start time (in {@link System#nanoTime()} units).
+ * Measuring latency from that point, rather than from when the request actually went out,
+ * keeps the queueing delay in the numbers (i.e. it corrects for coordinated omission).
+ */
+public class ConstantRateLoad {
+
+    private final double ratePerSecond;
+    private final long intervalNanos;
+
+    public ConstantRateLoad(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive, got " + ratePerSecond);
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+    }
+
+    /**
+     * Parses rates like <code>20000/s</code>, <code>600/m</code> or a bare <code>20000</code>
+     * (per second).
+     */
+    public static ConstantRateLoad parse(String rate) {
+        String s = rate.trim();
+        int slash = s.indexOf('/');
+        if (slash < 0) {
+            return new ConstantRateLoad(Double.parseDouble(s));
+        }
+        double amount = Double.parseDouble(s.substring(0, slash).trim());
+        String unit = s.substring(slash + 1).trim();
+        switch (unit) {
+            case "s":
+                return new ConstantRateLoad(amount);
+            case "m":
+                return new ConstantRateLoad(amount / 60);
+            case "ms":
+                return new ConstantRateLoad(amount * 1_000);
+            default:
+                throw new IllegalArgumentException("Unknown rate unit '" + unit + "' in " + rate);
+        }
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * Number of requests needed to sustain this rate for the given duration.
+     */
+    public int executionsFor(long duration, TimeUnit unit) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(unit.toNanos(duration) / (double) intervalNanos)));
+    }
+
+    /**
+     * Issues <code>executions</code> requests on schedule, blocking the caller until the last one
+     * has been issued (not completed).
+     * <p></p>
+     * If we fall behind (GC, a client call that blocks, ...) the late requests are fired
+     * back-to-back until we're on schedule again.  They still get their original intended
+     * start time.
+     */
+    public void fire(int executions, LongConsumer request) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < executions; i++) {
+            long intended = start + i * intervalNanos;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            request.accept(intended);
+        }
+    }
+}
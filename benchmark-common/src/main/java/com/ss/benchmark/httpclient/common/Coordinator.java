@@ -0,0 +1,269 @@
+package com.ss.benchmark.httpclient.common;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a benchmark from several load-generating JVMs at once, so one harness JVM's CPU and GC
+ * aren't the limit, and merges what they measured.
+ * <p></p>
+ * The coordinator listens on <code>bm.coordinator.port</code> (default 7070) for
+ * <code>bm.agents</code> agents (default 2): engine runs started with
+ * <code>-Dbm.agent=host:port</code> (see {@link AgentProbe}).  It starts
+ * <code>bm.agents.local</code> of them itself (default all), as <code>java -cp &lt;this classpath&gt;
+ * org.testng.TestNG &lt;args&gt;</code> with this JVM's options; the rest are started by hand,
+ * on other hosts.  E.g. four on this machine:
+ * <pre>
+ * java -Dbm.agents=4 -cp reactornetty-benchmark-1.0.0-SNAPSHOT-jar-with-dependencies.jar \
+ *     com.ss.benchmark.httpclient.common.Coordinator -usedefaultlisteners false testng/reactornetty.xml
+ * </pre>
+ * Every agent runs the same test methods, and each method starts once they've all got to it.
+ * When it's done, each sends its latency histogram and error count.  They're merged into a run
+ * directory under <code>$BM.METRICS.DIR</code>, in the same CSV format as a single run, so the
+ * reporter reads it the same way:
+ * <dl>
+ * <dt>timing</dt><dd>from the merged histogram.  The moving-average rates are just the mean
+ * rate.</dd>
+ * <dt>errorRate</dt><dd>summed</dd>
+ * <dt>requestsPerSecond</dt><dd>summed, each agent's count over its own time for the method</dd>
+ * <dt>agents</dt><dd>how many agents ran the method</dd>
+ * </dl>
+ * The merged <code>.hgrm</code> goes there too.  The local agents' own metrics and logs are in
+ * its <code>agents</code> directory.
+ */
+public class Coordinator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Coordinator.class);
+
+    // agent -> coordinator: HELLO <agent>, READY <method>, RESULT <method> <nanos> <errors> <histogram>, DONE
+    // coordinator -> agent: GO <method>
+    static final String HELLO = "HELLO";
+    static final String READY = "READY";
+    static final String RESULT = "RESULT";
+    static final String DONE = "DONE";
+    static final String GO = "GO";
+
+    static final int PORT = Integer.parseInt(System.getProperty("bm.coordinator.port", "7070"));
+    static final int AGENTS = Integer.parseInt(System.getProperty("bm.agents", "2"));
+    static final int LOCAL_AGENTS = Integer.parseInt(System.getProperty("bm.agents.local", String.valueOf(AGENTS)));
+    // how long to wait for all the agents to connect
+    static final int TIMEOUT_SECONDS = Integer.parseInt(System.getProperty("bm.coordinator.timeout.seconds", "300"));
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final Map<String, Merged> results = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        File runDir = new File(
+                java.util.Optional.ofNullable(System.getenv("BM.METRICS.DIR")).orElse("metrics-csv"),
+                Instant.now().toString());
+        File agentsDir = new File(runDir, "agents");
+        if (!agentsDir.mkdirs()) {
+            throw new RuntimeException("Could not create the directory:  " + agentsDir.getAbsolutePath());
+        }
+
+        List<Process> local = new ArrayList<>();
+        boolean finished = false;
+        try (ServerSocket server = new ServerSocket(PORT)) {
+            server.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            for (int i = 0; i < LOCAL_AGENTS; i++) {
+                local.add(startAgent("agent-" + i, agentsDir, args));
+            }
+            LOGGER.info("Waiting for " + AGENTS + " agents on port " + PORT + ", " + LOCAL_AGENTS + " of them local");
+
+            Coordinator coordinator = new Coordinator();
+            for (int i = 0; i < AGENTS; i++) {
+                coordinator.connections.add(new Connection(server.accept()));
+            }
+            coordinator.run();
+            coordinator.write(runDir);
+            finished = true;
+        } finally {
+            // if something went wrong, the agents would wait for us forever
+            for (Process p : local) {
+                if (!finished || !p.waitFor(1, TimeUnit.MINUTES)) {
+                    p.destroyForcibly();
+                }
+            }
+        }
+        LOGGER.info("Wrote " + runDir.getAbsolutePath());
+    }
+
+    // Same JVM options and classpath as this one; metrics and console output under agentsDir.
+    private static Process startAgent(String name, File agentsDir, String[] testNgArgs) throws IOException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        cmd.add("-Dbm.agent=localhost:" + PORT);
+        cmd.add("-Dbm.agent.name=" + name);
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("org.testng.TestNG");
+        cmd.addAll(Arrays.asList(testNgArgs));
+        ProcessBuilder pb = new ProcessBuilder(cmd)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(agentsDir, name + ".log"));
+        pb.environment().put("BM.METRICS.DIR", new File(agentsDir, name).getPath());
+        return pb.start();
+    }
+
+    // Lock step: gather everyone's results up to their next READY (or DONE), then let them all go.
+    private void run() {
+        while (true) {
+            List<String> next = new ArrayList<>();
+            for (Connection c : connections) {
+                next.add(c.nextStep(this));
+            }
+            if (next.stream().allMatch(DONE::equals)) {
+                return;
+            }
+            if (next.stream().distinct().count() != 1) {
+                throw new IllegalStateException("The agents are out of step: " + next);
+            }
+            String method = next.get(0).substring(READY.length() + 1);
+            LOGGER.info("Starting " + method);
+            for (Connection c : connections) {
+                c.send(GO + " " + method);
+            }
+        }
+    }
+
+    private void merge(String method, long nanos, long errors, Histogram h) {
+        results.computeIfAbsent(method, m -> new Merged()).add(nanos, errors, h);
+    }
+
+    private void write(File runDir) throws IOException {
+        long t = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        for (Map.Entry<String, Merged> e : results.entrySet()) {
+            String name = e.getKey();
+            Merged m = e.getValue();
+            Histogram h = m.histogram;
+            if (h.getTotalCount() > 0) {
+                try (PrintStream out = csv(runDir, name + ".timing", "t,count,max,mean,min,stddev,p50,p75,p95,p98,p99,p999,mean_rate,m1_rate,m5_rate,m15_rate,rate_unit,duration_unit")) {
+                    out.printf("%d,%d,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,calls/second,milliseconds%n",
+                            t, h.getTotalCount(), h.getMaxValue() / NANOS_PER_MILLI, h.getMean() / NANOS_PER_MILLI,
+                            h.getMinValue() / NANOS_PER_MILLI, h.getStdDeviation() / NANOS_PER_MILLI,
+                            millis(h, 50), millis(h, 75), millis(h, 95), millis(h, 98), millis(h, 99), millis(h, 99.9),
+                            m.requestsPerSecond, m.requestsPerSecond, m.requestsPerSecond, m.requestsPerSecond);
+                }
+                try (PrintStream out = new PrintStream(new FileOutputStream(new File(runDir, name + ".timing.hgrm")), false, StandardCharsets.UTF_8)) {
+                    h.outputPercentileDistribution(out, NANOS_PER_MILLI);
+                }
+                try (PrintStream out = csv(runDir, name + ".requestsPerSecond", "t,value")) {
+                    out.println(t + "," + m.requestsPerSecond);
+                }
+            }
+            try (PrintStream out = csv(runDir, name + ".errorRate", "t,count")) {
+                out.println(t + "," + m.errors);
+            }
+            try (PrintStream out = csv(runDir, name + ".agents", "t,value")) {
+                out.println(t + "," + m.agents);
+            }
+            LOGGER.info(String.format("%s: %d agents, %d requests, %.1f req/s, p50 %.3f ms, p99 %.3f ms, %d errors",
+                    name, m.agents, h.getTotalCount(), m.requestsPerSecond, millis(h, 50), millis(h, 99), m.errors));
+        }
+    }
+
+    private static double millis(Histogram h, double percentile) {
+        return h.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+    }
+
+    private static PrintStream csv(File dir, String name, String header) throws IOException {
+        PrintStream out = new PrintStream(new FileOutputStream(new File(dir, name + ".csv")), false, StandardCharsets.UTF_8);
+        out.println(header);
+        return out;
+    }
+
+    // One method, across the agents.
+    private static class Merged {
+        private final Histogram histogram = new Histogram(SIGNIFICANT_DIGITS);
+        private long errors;
+        private double requestsPerSecond;
+        private int agents;
+
+        void add(long nanos, long errors, Histogram h) {
+            histogram.add(h);
+            this.errors += errors;
+            if (nanos > 0) {
+                requestsPerSecond += (h.getTotalCount() + errors) * 1e9 / nanos;
+            }
+            agents++;
+        }
+    }
+
+    private static class Connection {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        private final String agent;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            String hello = in.readLine();
+            if (hello == null || !hello.startsWith(HELLO + " ")) {
+                throw new IllegalStateException("Expected an agent to say hello, got: " + hello);
+            }
+            this.agent = hello.substring(HELLO.length() + 1);
+            LOGGER.info("Agent " + agent + " connected from " + socket.getRemoteSocketAddress());
+        }
+
+        // Reads up to the agent's next READY or DONE, merging any results on the way.
+        String nextStep(Coordinator coordinator) {
+            while (true) {
+                String line = Exceptions.rethrowChecked(in::readLine);
+                if (line == null) {
+                    throw new IllegalStateException("Agent " + agent + " went away");
+                }
+                String[] words = line.split(" ");
+                switch (words[0]) {
+                    case RESULT:
+                        ByteBuffer bytes = ByteBuffer.wrap(Base64.getDecoder().decode(words[4]));
+                        Histogram h = Exceptions.rethrowChecked(() -> Histogram.decodeFromCompressedByteBuffer(bytes, 0));
+                        coordinator.merge(words[1], Long.parseLong(words[2]), Long.parseLong(words[3]), h);
+                        break;
+                    case READY:
+                        return line;
+                    case DONE:
+                        Exceptions.rethrowChecked(() -> {
+                            socket.close();
+                            return null;
+                        });
+                        return line;
+                    default:
+                        throw new IllegalStateException("Agent " + agent + " said: " + line);
+                }
+            }
+        }
+
+        void send(String line) {
+            out.println(line);
+        }
+    }
+}
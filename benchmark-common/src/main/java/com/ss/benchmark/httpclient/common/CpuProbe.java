@@ -0,0 +1,125 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * What a test method cost in CPU, per request.  Registered as gauges:
+ * <dl>
+ * <dt>requestsPerCpuSecond</dt><dd>requests over the process's CPU time
+ * ({@link com.sun.management.OperatingSystemMXBean#getProcessCpuTime()})</dd>
+ * <dt>cpuCores</dt><dd>that CPU time over the method's time: how many cores it kept busy</dd>
+ * <dt>contextSwitchesPerRequest</dt><dd>voluntary plus involuntary, below</dd>
+ * <dt>voluntaryContextSwitchesPerRequest</dt><dd>a thread gave up the CPU, e.g. to block or
+ * wait for I/O</dd>
+ * <dt>involuntaryContextSwitchesPerRequest</dt><dd>a thread was preempted; lots of these
+ * means more runnable threads than cores</dd>
+ * </dl>
+ * It's the whole process, so the harness's own threads are in there too, the same for every
+ * engine.  The context switches come from each thread's <code>/proc/self/task/&lt;tid&gt;/status</code>
+ * (Linux only), snapshotted when the method begins and ends, so like {@link AllocationProbe} a
+ * thread that starts and dies within one method is missed.
+ */
+public class CpuProbe implements MethodProbe {
+
+    private static final File TASKS = new File("/proc/self/task");
+    private static final String VOLUNTARY = "voluntary_ctxt_switches:";
+    private static final String INVOLUNTARY = "nonvoluntary_ctxt_switches:";
+
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final MetricRegistry metricRegistry;
+    private final Class<?> testClass;
+    private final ToLongFunction<String> requests;
+    private final boolean contextSwitches = TASKS.isDirectory();
+
+    private long beginNanos;
+    private long cpuAtBegin;
+    private Map<String, long[]> switchesAtBegin = new HashMap<>();
+
+    /**
+     * @param requests the number of requests a test method made, by method name
+     */
+    public CpuProbe(MetricRegistry metricRegistry, Class<?> testClass, ToLongFunction<String> requests) {
+        this.metricRegistry = metricRegistry;
+        this.testClass = testClass;
+        this.requests = requests;
+    }
+
+    public static boolean isSupported() {
+        return ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean
+                && ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime() >= 0;
+    }
+
+    @Override
+    public void begin(String method) {
+        switchesAtBegin = contextSwitches ? snapshotSwitches() : new HashMap<>();
+        beginNanos = System.nanoTime();
+        cpuAtBegin = os.getProcessCpuTime();
+    }
+
+    @Override
+    public void end(String method) {
+        long cpuNanos = os.getProcessCpuTime() - cpuAtBegin;
+        long nanos = System.nanoTime() - beginNanos;
+        long voluntary = 0;
+        long involuntary = 0;
+        if (contextSwitches) {
+            for (Map.Entry<String, long[]> e : snapshotSwitches().entrySet()) {
+                long[] before = switchesAtBegin.getOrDefault(e.getKey(), new long[2]);
+                voluntary += e.getValue()[0] - before[0];
+                involuntary += e.getValue()[1] - before[1];
+            }
+        }
+        long count = requests.applyAsLong(method);
+        if (count == 0) {
+            return;  // e.g. a skipped test
+        }
+        register(method, "cpuCores", cpuNanos / (double) nanos);
+        if (cpuNanos > 0) {
+            register(method, "requestsPerCpuSecond", count * 1e9 / cpuNanos);
+        }
+        if (contextSwitches) {
+            register(method, "contextSwitchesPerRequest", (voluntary + involuntary) / (double) count);
+            register(method, "voluntaryContextSwitchesPerRequest", voluntary / (double) count);
+            register(method, "involuntaryContextSwitchesPerRequest", involuntary / (double) count);
+        }
+    }
+
+    private void register(String method, String name, double value) {
+        metricRegistry.register(MetricRegistry.name(testClass, method, name), (Gauge<Double>) () -> value);
+    }
+
+    // tid -> {voluntary, involuntary}
+    private static Map<String, long[]> snapshotSwitches() {
+        Map<String, long[]> snapshot = new HashMap<>();
+        String[] tids = TASKS.list();
+        if (tids == null) {
+            return snapshot;
+        }
+        for (String tid : tids) {
+            long[] switches = new long[2];
+            try {
+                for (String line : Files.readAllLines(new File(TASKS, tid + "/status").toPath())) {
+                    if (line.startsWith(VOLUNTARY)) {
+                        switches[0] = Long.parseLong(line.substring(VOLUNTARY.length()).trim());
+                    } else if (line.startsWith(INVOLUNTARY)) {
+                        switches[1] = Long.parseLong(line.substring(INVOLUNTARY.length()).trim());
+                    }
+                }
+            } catch (IOException e) {
+                continue;  // the thread died since we listed them
+            }
+            snapshot.put(tid, switches);
+        }
+        return snapshot;
+    }
+}
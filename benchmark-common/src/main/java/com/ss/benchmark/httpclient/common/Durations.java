@@ -0,0 +1,49 @@
+package com.ss.benchmark.httpclient.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Durations written the short way: <code>500us</code>, <code>50ms</code>, <code>1.5s</code>,
+ * <code>30m</code>, <code>2h</code>, <code>1d</code>.  A bare number is milliseconds.
+ */
+public class Durations {
+
+    private static final Pattern DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(us|ms|s|m|h|d)?");
+
+    private Durations() {
+    }
+
+    /**
+     * Returns nanoseconds.
+     */
+    public static long parseNanos(String duration) {
+        Matcher m = DURATION.matcher(duration.trim().toLowerCase());
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Not a duration: '" + duration + "'");
+        }
+        double amount = Double.parseDouble(m.group(1));
+        return Math.round(amount * unit(m.group(2)).toNanos(1));
+    }
+
+    private static TimeUnit unit(String suffix) {
+        if (suffix == null) {
+            return TimeUnit.MILLISECONDS;
+        }
+        switch (suffix) {
+            case "us":
+                return TimeUnit.MICROSECONDS;
+            case "ms":
+                return TimeUnit.MILLISECONDS;
+            case "s":
+                return TimeUnit.SECONDS;
+            case "m":
+                return TimeUnit.MINUTES;
+            case "h":
+                return TimeUnit.HOURS;
+            default:
+                return TimeUnit.DAYS;
+        }
+    }
+}
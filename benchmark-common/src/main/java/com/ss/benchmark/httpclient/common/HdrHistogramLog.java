@@ -0,0 +1,93 @@
+package com.ss.benchmark.httpclient.common;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out {@link HdrReservoir}s and periodically writes their interval histograms to
+ * <code>&lt;name&gt;.hlog</code> files (one per reservoir, i.e. one per test method).  On close, a
+ * <code>&lt;name&gt;.hgrm</code> percentile distribution of the whole run is written as well.
+ * <p></p>
+ * The <code>.hlog</code> files are standard HdrHistogram interval logs, so they can be merged or
+ * re-percentiled after the fact with HistogramLogProcessor.  Values are in nanoseconds.
+ */
+public class HdrHistogramLog implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HdrHistogramLog.class);
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final File dir;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "hdr-histogram-log");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public HdrHistogramLog(File dir, long interval, TimeUnit unit) {
+        this.dir = dir;
+        scheduler.scheduleAtFixedRate(this::writeIntervals, interval, interval, unit);
+    }
+
+    public HdrReservoir reservoir(String name) {
+        return entries.computeIfAbsent(name, Entry::new).reservoir;
+    }
+
+    private synchronized void writeIntervals() {
+        entries.values().forEach(Entry::writeInterval);
+    }
+
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
+        entries.values().forEach(Entry::close);
+    }
+
+    private class Entry {
+        private final String name;
+        private final HdrReservoir reservoir = new HdrReservoir();
+        private final HistogramLogWriter writer;
+        private long intervalStart = System.currentTimeMillis();
+
+        Entry(String name) {
+            this.name = name;
+            this.writer = Exceptions.rethrowChecked(() -> new HistogramLogWriter(new File(dir, name + ".hlog")));
+            writer.outputLogFormatVersion();
+            writer.outputStartTime(intervalStart);
+            writer.setBaseTime(intervalStart);
+            writer.outputLegend();
+        }
+
+        void writeInterval() {
+            long now = System.currentTimeMillis();
+            Histogram h = reservoir.nextInterval();
+            h.setStartTimeStamp(intervalStart);
+            h.setEndTimeStamp(now);
+            writer.outputIntervalHistogram(h);
+            intervalStart = now;
+        }
+
+        void close() {
+            writeInterval();
+            writer.close();
+            try (PrintStream out = new PrintStream(new FileOutputStream(new File(dir, name + ".hgrm")), false, StandardCharsets.UTF_8)) {
+                reservoir.sample().outputPercentileDistribution(out, NANOS_PER_MILLI);
+            } catch (Exception e) {
+                LOGGER.error("Could not write the percentile distribution for " + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.LongStream;
+
+/**
+ * Dropwizard {@link Reservoir} backed by HdrHistogram.  Unlike the default exponentially-decaying
+ * reservoir, nothing is sampled away, so the tail percentiles and max are exact (to 3 significant
+ * digits).
+ * <p></p>
+ * Recording threads are spread over a fixed set of {@link Recorder}s by thread id, one or two
+ * per core, so {@link #update(long)} is wait-free and threads seldom share one.  A fixed set rather
+ * than one per thread, as with virtual threads every request can be a new thread.  The recorders
+ * are only touched by other threads when {@link #sample()} flips their interval histograms.
+ */
+public class HdrReservoir implements Reservoir {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    // a power of two, so a thread's recorder is its id's low bits
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) << 1;
+
+    private final Recorder[] recorders = new Recorder[STRIPES];
+
+    // Guarded by this.
+    private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+    private final Histogram interval = new Histogram(SIGNIFICANT_DIGITS);
+    private final Histogram scratch = new Histogram(SIGNIFICANT_DIGITS);
+
+    public HdrReservoir() {
+        for (int i = 0; i < STRIPES; i++) {
+            recorders[i] = new Recorder(SIGNIFICANT_DIGITS);
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, sample().getTotalCount());
+    }
+
+    @Override
+    public void update(long value) {
+        recorders[(int) Thread.currentThread().getId() & (STRIPES - 1)].recordValue(value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return new HdrSnapshot(sample());
+    }
+
+    /**
+     * Everything recorded so far.
+     */
+    public synchronized Histogram sample() {
+        drainRecorders();
+        return total.copy();
+    }
+
+    /**
+     * Everything recorded since the previous call.  The start/end timestamps are left for the
+     * caller to set.
+     */
+    public synchronized Histogram nextInterval() {
+        drainRecorders();
+        Histogram h = interval.copy();
+        interval.reset();
+        return h;
+    }
+
+    private void drainRecorders() {
+        for (Recorder r : recorders) {
+            r.getIntervalHistogramInto(scratch);
+            total.add(scratch);
+            interval.add(scratch);
+        }
+    }
+
+    private static class HdrSnapshot extends Snapshot {
+
+        private final Histogram histogram;
+
+        HdrSnapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            return histogram.getValueAtPercentile(quantile * 100);
+        }
+
+        /**
+         * HdrHistogram does not keep individual samples; this is one entry per distinct
+         * (bucketed) value.
+         */
+        @Override
+        public long[] getValues() {
+            LongStream.Builder values = LongStream.builder();
+            for (HistogramIterationValue v : histogram.recordedValues()) {
+                values.add(v.getValueIteratedTo());
+            }
+            return values.build().toArray();
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, histogram.getTotalCount());
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue();
+        }
+
+        @Override
+        public double getStdDev() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getStdDeviation();
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintStream out = new PrintStream(output, false, StandardCharsets.UTF_8)) {
+                histogram.outputPercentileDistribution(out, 1.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The heap in use right after the latest collection, young or full, summed over the heap pools.
+ * Taken from the collectors' notifications, as the pools' own collection usage
+ * ({@link MemoryPoolMXBean#getCollectionUsage()}) only moves when that pool is collected: under
+ * G1 the old generation's stays at 0 through any number of young collections, however much they
+ * promote.
+ * <p></p>
+ * The notifications come on a JDK thread a little after each collection.
+ */
+final class HeapAfterGc {
+
+    private static final Set<String> HEAP_POOLS = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .map(MemoryPoolMXBean::getName)
+            .collect(Collectors.toSet());
+
+    // -1 until the first collection
+    private static volatile long bytes = -1;
+
+    static {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                    if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                        GarbageCollectionNotificationInfo info =
+                                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                        bytes = heap(info.getGcInfo().getMemoryUsageAfterGc());
+                    }
+                }, null, null);
+            }
+        }
+    }
+
+    private HeapAfterGc() {
+    }
+
+    /**
+     * Starts listening, if nothing has yet.  Collections before this aren't seen.
+     */
+    static void install() {
+        // the static initializer does it
+    }
+
+    /**
+     * Bytes, or -1 if there's been no collection since {@link #install()}.
+     */
+    static long bytes() {
+        return bytes;
+    }
+
+    private static long heap(Map<String, MemoryUsage> usageByPool) {
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> e : usageByPool.entrySet()) {
+            if (HEAP_POOLS.contains(e.getKey())) {
+                used += e.getValue().getUsed();
+            }
+        }
+        return used;
+    }
+}
@@ -2,6 +2,8 @@ package com.ss.benchmark.httpclient.common;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
 
 import static com.ss.benchmark.httpclient.common.Exceptions.rethrowChecked;
@@ -9,15 +11,25 @@ import static com.ss.benchmark.httpclient.common.Exceptions.rethrowChecked;
 public interface HttpClientEngine extends Closeable {
 
     //All times are milliseconds unless otherwise noted
-    int MAX_CONNECTION_POOL_SIZE = 200;
+    // connections per client, -Dbm.pool.size
+    int MAX_CONNECTION_POOL_SIZE = Integer.parseInt(System.getProperty("bm.pool.size", "200"));
     int CONNECT_TIMEOUT = 5_000;
     int READ_TIMEOUT = 50_000;
 
+    HttpProtocol PROTOCOL = HttpProtocol.parse(System.getProperty("bm.protocol", "http1"));
+
     /**
-     * HTTP protocol is assumed.
+     * HTTP protocol is assumed, unless the engine {@link #supports(HttpProtocol)} {@link #PROTOCOL}.
      */
     void createClient(String host, int port);
 
+    /**
+     * Engines that can speak HTTP/2 override this, and honor {@link #PROTOCOL} in {@link #createClient(String, int)}.
+     */
+    default boolean supports(HttpProtocol protocol) {
+        return protocol == HttpProtocol.HTTP1;
+    }
+
     default String blockingGET(String path) {
         return rethrowChecked(() -> nonblockingGET(path).get());
     }
@@ -30,8 +42,49 @@ public interface HttpClientEngine extends Closeable {
 
     CompletableFuture<String> nonblockingPOST(String path, String body);
 
+    default ByteBuffer blockingGETBytes(String path) {
+        return rethrowChecked(() -> nonblockingGETBytes(path).get());
+    }
+
+    default ByteBuffer blockingPOSTBytes(String path, String body) {
+        return rethrowChecked(() -> nonblockingPOSTBytes(path, body).get());
+    }
+
+    /**
+     * Like {@link #nonblockingGET(String)}, but the response body is handed back as raw bytes,
+     * so we measure the client and not the UTF-8 decoding.  Engines should override this; the
+     * default just encodes the String response.
+     */
+    default CompletableFuture<ByteBuffer> nonblockingGETBytes(String path) {
+        return nonblockingGET(path).thenApply(s -> ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * See {@link #nonblockingGETBytes(String)}.
+     */
+    default CompletableFuture<ByteBuffer> nonblockingPOSTBytes(String path, String body) {
+        return nonblockingPOST(path, body).thenApply(s -> ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * GETs a response that may be far too big to hold (the mock service's <code>/stream/{size}</code>),
+     * reading the body as it arrives and throwing it away.  Completes with the number of body bytes
+     * read.  Engines should override this; the default buffers the whole body.
+     */
+    default CompletableFuture<Long> nonblockingStreamGET(String path) {
+        return nonblockingGETBytes(path).thenApply(bytes -> (long) bytes.remaining());
+    }
+
+    /**
+     * What the connection pool is doing right now, or null if the engine can't tell.  Called every
+     * few milliseconds while a test runs (see {@link PoolStatsProbe}), so it should be cheap.
+     */
+    default PoolStats poolStats() {
+        return null;
+    }
+
     default String url(String host, int port) {
-        return "http://" + host + ":" + port;
+        return (PROTOCOL == HttpProtocol.H2 ? "https://" : "http://") + host + ":" + port;
     }
 
     @Override
@@ -0,0 +1,23 @@
+package com.ss.benchmark.httpclient.common;
+
+/**
+ * What the engines talk to the server, from <code>-Dbm.protocol</code>.  HTTP/2 needs the HTTP/2
+ * mock service (<code>-Dmock.h2=true</code>, on <code>h2c.port</code>/<code>h2.port</code>), since
+ * WireMock only does HTTP/1.1.
+ */
+public enum HttpProtocol {
+    /** HTTP/1.1, the default. */
+    HTTP1,
+    /** HTTP/2 over cleartext. */
+    H2C,
+    /** HTTP/2 over TLS. */
+    H2;
+
+    public static HttpProtocol parse(String s) {
+        return valueOf(s.trim().toUpperCase());
+    }
+
+    public boolean isHttp2() {
+        return this != HTTP1;
+    }
+}
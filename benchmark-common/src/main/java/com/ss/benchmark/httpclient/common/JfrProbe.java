@@ -0,0 +1,70 @@
+package com.ss.benchmark.httpclient.common;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * A Flight Recorder recording of each test method, in <code>&lt;class&gt;.&lt;method&gt;.jfr</code>
+ * next to the CSVs, with a {@link RequestEvent} per request.
+ * <p></p>
+ * <code>-Dbm.jfr</code> picks the settings: <code>default</code> or <code>profile</code> (the JDK's,
+ * or whatever is in its <code>lib/jfr</code>, like the docker image's) or the path of a
+ * <code>.jfc</code> file.  Unset, nothing is recorded.  Only requests slower than
+ * <code>bm.jfr.request.threshold</code> (e.g. <code>10ms</code>, default all of them) are recorded,
+ * to keep long runs' recordings small.
+ */
+public class JfrProbe implements MethodProbe {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JfrProbe.class);
+
+    public static final String SETTINGS = System.getProperty("bm.jfr");
+    static final String REQUEST_THRESHOLD = System.getProperty("bm.jfr.request.threshold", "0ms");
+
+    private final File dir;
+    private final Class<?> testClass;
+    private final Configuration configuration;
+    private Recording recording;
+
+    public JfrProbe(File dir, Class<?> testClass) {
+        this.dir = dir;
+        this.testClass = testClass;
+        Path path = Paths.get(SETTINGS);
+        this.configuration = Exceptions.rethrowChecked(() -> Files.isRegularFile(path)
+                ? Configuration.create(path)
+                : Configuration.getConfiguration(SETTINGS));
+    }
+
+    public static boolean isEnabled() {
+        return SETTINGS != null;
+    }
+
+    @Override
+    public void begin(String method) {
+        recording = new Recording(configuration);
+        recording.setName(method);
+        recording.enable(RequestEvent.class)
+                .withThreshold(Duration.ofNanos(Durations.parseNanos(REQUEST_THRESHOLD)));
+        Exceptions.rethrowChecked(() -> {
+            recording.setDestination(new File(dir, testClass.getName() + "." + method + ".jfr").toPath());
+            return null;
+        });
+        recording.start();
+    }
+
+    @Override
+    public void end(String method) {
+        // stopping writes it to the destination
+        recording.stop();
+        LOGGER.info("Wrote " + recording.getDestination());
+        recording.close();
+        recording = null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * What a test method cost the JVM's memory, besides what it allocated (see
+ * {@link AllocationProbe}).  Registered as gauges, each the change from the method's start to its
+ * end except where it says otherwise:
+ * <dl>
+ * <dt>gcCount, gcMillis</dt><dd>collections and their time, over all the collectors</dd>
+ * <dt>gcCount&lt;Collector&gt;, gcMillis&lt;Collector&gt;</dt><dd>the same for each collector,
+ * e.g. <code>gcMillisG1YoungGeneration</code>.  The time is what
+ * {@link GarbageCollectorMXBean#getCollectionTime()} says, which for the concurrent collectors
+ * (e.g. <code>G1OldGeneration</code> on some JDKs) is more than the pauses.</dd>
+ * <dt>heapAfterGcBytes</dt><dd>the heap left after the latest collection, young or full, at the
+ * end (see {@link HeapAfterGc}).  Only meaningful if there was one during the method, and missing
+ * if there's been none at all.</dd>
+ * <dt>heapAfterGcChangeBytes</dt><dd>how much that grew; steady growth over methods is a leak</dd>
+ * <dt>directBytes</dt><dd>direct memory in use at the end: the JDK's buffers plus what Netty
+ * allocated without a cleaner (see {@link PeakMemory}).  Netty's pools hold on to what they've
+ * allocated, so this is mostly the engines' buffer pools.</dd>
+ * <dt>directChangeBytes</dt><dd>how much that grew</dd>
+ * </dl>
+ * Nothing is registered for a method that made no requests, e.g. a skipped test.
+ */
+public class MemoryProbe implements MethodProbe {
+
+    private final MetricRegistry metricRegistry;
+    private final Class<?> testClass;
+    private final ToLongFunction<String> requests;
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private long[] countsAtBegin;
+    private long[] millisAtBegin;
+    private long heapAfterGcAtBegin;
+    private long directAtBegin;
+
+    /**
+     * @param requests the number of requests a test method made, by method name
+     */
+    public MemoryProbe(MetricRegistry metricRegistry, Class<?> testClass, ToLongFunction<String> requests) {
+        this.metricRegistry = metricRegistry;
+        this.testClass = testClass;
+        this.requests = requests;
+        HeapAfterGc.install();
+    }
+
+    @Override
+    public void begin(String method) {
+        countsAtBegin = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).toArray();
+        millisAtBegin = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).toArray();
+        heapAfterGcAtBegin = HeapAfterGc.bytes();
+        directAtBegin = PeakMemory.directNow();
+    }
+
+    @Override
+    public void end(String method) {
+        if (requests.applyAsLong(method) == 0) {
+            return;  // e.g. a skipped test
+        }
+        long count = 0;
+        long millis = 0;
+        for (int i = 0; i < collectors.size(); i++) {
+            String collector = collectors.get(i).getName().replaceAll("[^A-Za-z0-9]", "");
+            // -1 if the collector doesn't say
+            long c = Math.max(0, collectors.get(i).getCollectionCount() - countsAtBegin[i]);
+            long m = Math.max(0, collectors.get(i).getCollectionTime() - millisAtBegin[i]);
+            register(method, "gcCount" + collector, c);
+            register(method, "gcMillis" + collector, m);
+            count += c;
+            millis += m;
+        }
+        register(method, "gcCount", count);
+        register(method, "gcMillis", millis);
+
+        long heapAfterGc = HeapAfterGc.bytes();
+        if (heapAfterGc >= 0) {
+            register(method, "heapAfterGcBytes", heapAfterGc);
+            if (heapAfterGcAtBegin >= 0) {
+                register(method, "heapAfterGcChangeBytes", heapAfterGc - heapAfterGcAtBegin);
+            }
+        }
+
+        long direct = PeakMemory.directNow();
+        register(method, "directBytes", direct);
+        register(method, "directChangeBytes", direct - directAtBegin);
+    }
+
+    private void register(String method, String name, long value) {
+        metricRegistry.register(MetricRegistry.name(testClass, method, name), (Gauge<Long>) () -> value);
+    }
+}
@@ -0,0 +1,13 @@
+package com.ss.benchmark.httpclient.common;
+
+/**
+ * Something measured over a whole test method, i.e. across all of its invocations.
+ * {@link BasePerformanceTest} calls {@link #begin(String)} before the first invocation of a
+ * method and {@link #end(String)} once they have all completed.
+ */
+public interface MethodProbe {
+
+    void begin(String method);
+
+    void end(String method);
+}
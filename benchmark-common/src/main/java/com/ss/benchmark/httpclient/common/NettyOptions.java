@@ -0,0 +1,89 @@
+package com.ss.benchmark.httpclient.common;
+
+import java.util.function.Function;
+
+/**
+ * How the Netty-based engines (<code>reactornetty</code>, <code>rxnetty</code>, <code>asynchttpclient</code>)
+ * set up Netty.  Each one is left at the library's own default unless it's given:
+ * <dl>
+ * <dt><code>-Dbm.netty.transport=epoll|nio</code></dt><dd>the native epoll transport, or NIO.  Where
+ * epoll can't be loaded (not Linux, no native library for this platform) the engine says so and
+ * uses NIO.</dd>
+ * <dt><code>-Dbm.netty.allocator=pooled|unpooled</code></dt><dd>the buffer allocator</dd>
+ * <dt><code>-Dbm.netty.buffers=heap|direct</code></dt><dd>what the allocator hands out</dd>
+ * <dt><code>-Dbm.netty.threads=N</code></dt><dd>event-loop threads</dd>
+ * </dl>
+ * Netty isn't on this module's classpath (and each engine brings its own version), so the engines
+ * hand in what Netty says and how to make its objects.
+ * <p></p>
+ * <code>java -cp &lt;engine jar&gt; com.ss.benchmark.httpclient.common.NettyOptions</code> exits
+ * with 0 if that jar's Netty can load epoll here, 1 if not: the docker app asks before running
+ * the epoll arm of its matrix.
+ */
+public final class NettyOptions {
+
+    public enum Transport { EPOLL, NIO }
+
+    public enum Allocator { POOLED, UNPOOLED }
+
+    public enum Buffers { HEAP, DIRECT }
+
+    /** null if not given */
+    public static final Transport TRANSPORT = parse(Transport.class, "bm.netty.transport");
+    /** null if not given */
+    public static final Allocator ALLOCATOR = parse(Allocator.class, "bm.netty.allocator");
+    /** null if not given */
+    public static final Buffers BUFFERS = parse(Buffers.class, "bm.netty.buffers");
+    /** 0 if not given */
+    public static final int THREADS = Integer.parseInt(System.getProperty("bm.netty.threads", "0"));
+
+    private NettyOptions() {}
+
+    /**
+     * Whether the engine should run on epoll, given whether the engine's Netty can load it.  If
+     * epoll was asked for and can't be had, says why on stderr and answers false, for NIO.
+     */
+    public static boolean useEpoll(String engine, boolean available, Throwable unavailabilityCause) {
+        if (TRANSPORT != Transport.EPOLL) {
+            return false;
+        }
+        if (!available) {
+            System.err.println(engine + ": epoll isn't available, falling back to NIO: " + unavailabilityCause);
+        }
+        return available;
+    }
+
+    /**
+     * Whether the engine should set its own allocator, i.e. either allocator option was given.
+     * The other one is then Netty's default: pooled, and direct if the platform allows.
+     */
+    public static boolean customAllocator() {
+        return ALLOCATOR != null || BUFFERS != null;
+    }
+
+    /**
+     * The allocator to set if {@link #customAllocator()}: <code>pooled</code> or
+     * <code>unpooled</code> called with whether to hand out direct buffers, Netty's default
+     * (<code>nettyPrefersDirect</code>, i.e. <code>PlatformDependent.directBufferPreferred()</code>)
+     * for whichever of the two options wasn't given.
+     */
+    public static <A> A allocator(boolean nettyPrefersDirect, Function<Boolean, A> pooled, Function<Boolean, A> unpooled) {
+        boolean direct = BUFFERS == null ? nettyPrefersDirect : BUFFERS == Buffers.DIRECT;
+        return ALLOCATOR == Allocator.UNPOOLED ? unpooled.apply(direct) : pooled.apply(direct);
+    }
+
+    public static void main(String[] args) {
+        boolean available;
+        try {
+            available = (Boolean) Class.forName("io.netty.channel.epoll.Epoll").getMethod("isAvailable").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            available = false;
+        }
+        System.exit(available ? 0 : 1);
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String property) {
+        String value = System.getProperty(property);
+        return value == null || value.trim().isEmpty() ? null : Enum.valueOf(type, value.trim().toUpperCase());
+    }
+}
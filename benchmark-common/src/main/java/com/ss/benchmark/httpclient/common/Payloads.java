@@ -4,19 +4,37 @@ package com.ss.benchmark.httpclient.common;
  * Created by ssrinivasa on 12/13/18.
  */
 
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Payloads {
 
     public Payloads() {}
 
+    // Built once per size, and shared by the tests and the mock service.
+    private static final Map<Integer, String> STRINGS = new ConcurrentHashMap<>();
+    private static final Map<Integer, byte[]> BYTES = new ConcurrentHashMap<>();
+
     public static final String HELLO = "Hello!";
-    public static final String SHORT = mkStr(550);
-    public static final String LONG = mkStr(762_050);
+    public static final String SHORT = of(550);
+    public static final String LONG = of(762_050);
+
+    /**
+     * A payload of the given number of characters.
+     */
+    public static String of(int size) {
+        return STRINGS.computeIfAbsent(size, Payloads::mkStr);
+    }
+
+    /**
+     * {@link #of(int)} as UTF-8, which is as many bytes as characters.  Shared, so don't write to it.
+     */
+    public static byte[] bytes(int size) {
+        return BYTES.computeIfAbsent(size, n -> of(n).getBytes(StandardCharsets.UTF_8));
+    }
 
     private static String mkStr(int i) {
-        return IntStream.range(0, i).mapToObj(Void -> "a").collect(Collectors.joining());
+        return "a".repeat(i);
     }
 }
-
@@ -0,0 +1,86 @@
+package com.ss.benchmark.httpclient.common;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The most heap and direct memory in use while it's open, sampled every few milliseconds, so a
+ * short spike can be missed.
+ * <ul>
+ *     <li>Heap is what {@link MemoryMXBean#getHeapMemoryUsage()} calls used, garbage included.</li>
+ *     <li>Direct is the JDK's <code>direct</code> buffer pool plus what Netty allocated without a
+ *     cleaner (<code>PlatformDependent.usedDirectMemory()</code>), which the pool doesn't see.</li>
+ * </ul>
+ */
+public class PeakMemory implements AutoCloseable {
+
+    private static final long SAMPLE_MILLIS = 5;
+
+    private static final Method NETTY_DIRECT = nettyDirectMemory();
+
+    private static final BufferPoolMXBean DIRECT_POOL = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+            .filter(pool -> "direct".equals(pool.getName()))
+            .findFirst()
+            .orElse(null);
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "peak-memory");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile long heap;
+    private volatile long direct;
+
+    public PeakMemory() {
+        sample();
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Only the sampler thread writes.
+    private void sample() {
+        heap = Math.max(heap, memory.getHeapMemoryUsage().getUsed());
+        direct = Math.max(direct, directNow());
+    }
+
+    /**
+     * Direct memory in use now, counted as above.
+     */
+    static long directNow() {
+        long used = DIRECT_POOL == null ? 0 : DIRECT_POOL.getMemoryUsed();
+        if (NETTY_DIRECT != null) {
+            used += Math.max(0, Exceptions.rethrowChecked(() -> (Long) NETTY_DIRECT.invoke(null)));
+        }
+        return used;
+    }
+
+    public long heapBytes() {
+        return heap;
+    }
+
+    public long directBytes() {
+        return direct;
+    }
+
+    // Not every engine has Netty on the classpath.  -1 when Netty isn't counting.
+    private static Method nettyDirectMemory() {
+        try {
+            return Class.forName("io.netty.util.internal.PlatformDependent").getMethod("usedDirectMemory");
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        sampler.shutdownNow();
+        Exceptions.rethrowChecked(() -> sampler.awaitTermination(1, TimeUnit.SECONDS));
+        sample();
+    }
+}
@@ -0,0 +1,50 @@
+package com.ss.benchmark.httpclient.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link PoolStats} for engines that don't count for themselves but tell us about connections
+ * and acquires as they happen.  Idle is what's open and not leased.
+ */
+public class PoolCounters {
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder leased = new LongAdder();
+    private final LongAdder pending = new LongAdder();
+
+    public void connectionCreated() {
+        created.increment();
+    }
+
+    public void connectionClosed() {
+        closed.increment();
+    }
+
+    public void acquireStarted() {
+        pending.increment();
+    }
+
+    /**
+     * An acquire that ended without a connection (an error, a cancel).
+     */
+    public void acquireFailed() {
+        pending.decrement();
+    }
+
+    public void acquired() {
+        pending.decrement();
+        leased.increment();
+    }
+
+    public void released() {
+        leased.decrement();
+    }
+
+    public PoolStats snapshot() {
+        long closedNow = closed.sum();
+        long createdNow = created.sum();
+        long leasedNow = Math.max(0, leased.sum());
+        return new PoolStats(leasedNow, Math.max(0, createdNow - closedNow - leasedNow), Math.max(0, pending.sum()), createdNow, closedNow);
+    }
+}
@@ -0,0 +1,56 @@
+package com.ss.benchmark.httpclient.common;
+
+/**
+ * The state of an engine's connection pool at one moment (see {@link HttpClientEngine#poolStats()}).
+ * Counts an engine can't see are {@link #UNKNOWN}.
+ * <dl>
+ * <dt>leased</dt><dd>connections carrying a request right now</dd>
+ * <dt>idle</dt><dd>open connections waiting in the pool</dd>
+ * <dt>pending</dt><dd>requests waiting for a connection</dd>
+ * <dt>created</dt><dd>connections opened since the client was created</dd>
+ * <dt>closed</dt><dd>connections closed since the client was created</dd>
+ * </dl>
+ */
+public class PoolStats {
+
+    public static final long UNKNOWN = -1;
+
+    private final long leased;
+    private final long idle;
+    private final long pending;
+    private final long created;
+    private final long closed;
+
+    public PoolStats(long leased, long idle, long pending, long created, long closed) {
+        this.leased = leased;
+        this.idle = idle;
+        this.pending = pending;
+        this.created = created;
+        this.closed = closed;
+    }
+
+    public long leased() {
+        return leased;
+    }
+
+    public long idle() {
+        return idle;
+    }
+
+    public long pending() {
+        return pending;
+    }
+
+    public long created() {
+        return created;
+    }
+
+    public long closed() {
+        return closed;
+    }
+
+    @Override
+    public String toString() {
+        return "leased=" + leased + " idle=" + idle + " pending=" + pending + " created=" + created + " closed=" + closed;
+    }
+}
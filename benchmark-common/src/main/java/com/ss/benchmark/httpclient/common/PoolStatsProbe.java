@@ -0,0 +1,137 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * What the engine's connection pool did over a test method, from {@link HttpClientEngine#poolStats()}
+ * sampled every few milliseconds, so a short spike can be missed.  Registers, for the counts the
+ * engine knows:
+ * <dl>
+ * <dt>poolLeased</dt><dd>the most connections leased at once</dd>
+ * <dt>poolPending</dt><dd>the most requests waiting for a connection at once.  Engines that hand
+ * out connections on an event loop always have a few waiting; it's when poolLeased is at
+ * {@link HttpClientEngine#MAX_CONNECTION_POOL_SIZE} too that the pool is the bottleneck.</dd>
+ * <dt>poolIdle</dt><dd>idle connections, as of the last sample</dd>
+ * <dt>poolConnectionsCreated, poolConnectionsClosed</dt><dd>meters of the connections opened
+ * and closed during the method.  Lots of both means connections are being churned instead of
+ * reused.</dd>
+ * </dl>
+ * They're registered when the method begins, so the console reporter shows them while it runs,
+ * and removed again at the end if the method made no requests (e.g. a skipped test).
+ */
+public class PoolStatsProbe implements MethodProbe {
+
+    private static final long SAMPLE_MILLIS = 10;
+
+    private final MetricRegistry metricRegistry;
+    private final Class<?> testClass;
+    private final Supplier<PoolStats> stats;
+    private final ToLongFunction<String> requests;
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "pool-stats");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ScheduledFuture<?> sampling;
+    private MethodStats current;
+
+    /**
+     * @param requests the number of requests a test method made, by method name
+     */
+    public PoolStatsProbe(MetricRegistry metricRegistry, Class<?> testClass, Supplier<PoolStats> stats,
+                          ToLongFunction<String> requests) {
+        this.metricRegistry = metricRegistry;
+        this.testClass = testClass;
+        this.stats = stats;
+        this.requests = requests;
+    }
+
+    /**
+     * Whether the engine can tell.
+     */
+    public static boolean isSupported(HttpClientEngine engine) {
+        return engine.poolStats() != null;
+    }
+
+    @Override
+    public void begin(String method) {
+        current = new MethodStats(method, stats.get());
+        sampling = sampler.scheduleAtFixedRate(current::sample, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void end(String method) {
+        sampling.cancel(false);
+        // one last sample, queued behind any that's in progress
+        Exceptions.rethrowChecked(() -> sampler.submit(current::sample).get());
+        if (requests.applyAsLong(method) == 0) {
+            current.names.forEach(metricRegistry::remove);
+        }
+    }
+
+    // One test method's worth; only the sampler thread writes.
+    private class MethodStats {
+        private volatile long leased;
+        private volatile long pending;
+        private volatile long idle;
+        private long created;
+        private long closed;
+        private final Meter createdMeter;
+        private final Meter closedMeter;
+        // what's registered, to take back out
+        private final List<String> names = new ArrayList<>();
+
+        MethodStats(String method, PoolStats atBegin) {
+            created = atBegin.created();
+            closed = atBegin.closed();
+            if (atBegin.leased() != PoolStats.UNKNOWN) {
+                metricRegistry.register(name(method, "poolLeased"), (Gauge<Long>) () -> leased);
+            }
+            if (atBegin.pending() != PoolStats.UNKNOWN) {
+                metricRegistry.register(name(method, "poolPending"), (Gauge<Long>) () -> pending);
+            }
+            if (atBegin.idle() != PoolStats.UNKNOWN) {
+                idle = atBegin.idle();
+                metricRegistry.register(name(method, "poolIdle"), (Gauge<Long>) () -> idle);
+            }
+            createdMeter = atBegin.created() == PoolStats.UNKNOWN
+                    ? null : metricRegistry.meter(name(method, "poolConnectionsCreated"));
+            closedMeter = atBegin.closed() == PoolStats.UNKNOWN
+                    ? null : metricRegistry.meter(name(method, "poolConnectionsClosed"));
+        }
+
+        private String name(String method, String metric) {
+            String name = MetricRegistry.name(testClass, method, metric);
+            names.add(name);
+            return name;
+        }
+
+        void sample() {
+            PoolStats now = stats.get();
+            leased = Math.max(leased, now.leased());
+            pending = Math.max(pending, now.pending());
+            idle = now.idle();
+            // Some engines work closed out from what's open, which can run ahead for a moment.
+            if (createdMeter != null && now.created() > created) {
+                createdMeter.mark(now.created() - created);
+                created = now.created();
+            }
+            if (closedMeter != null && now.closed() > closed) {
+                closedMeter.mark(now.closed() - closed);
+                closed = now.closed();
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Recorder;
+
+/**
+ * A timer's reservoir that also records every update into a {@link Recorder}, so the latencies
+ * of an interval can be had without disturbing the timer's own.
+ */
+public class RecordingReservoir implements Reservoir {
+
+    private final Reservoir reservoir;
+    private final Recorder recorder;
+
+    public RecordingReservoir(Reservoir reservoir, Recorder recorder) {
+        this.reservoir = reservoir;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public int size() {
+        return reservoir.size();
+    }
+
+    @Override
+    public void update(long value) {
+        reservoir.update(value);
+        recorder.recordValue(value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return reservoir.getSnapshot();
+    }
+}
@@ -0,0 +1,88 @@
+package com.ss.benchmark.httpclient.common;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One request, in the JFR recordings {@link JfrProbe} makes, so a slow one can be lined up with
+ * the GC, safepoint and lock events around it.  It starts when the request is sent and is
+ * committed on whichever thread sees it finish.
+ */
+@Name("benchmark.Request")
+@Label("HTTP Request")
+@Category("Benchmark")
+@Description("A request made by a benchmark test")
+@StackTrace(false)
+public class RequestEvent extends Event {
+
+    public static final String OK = "ok";
+    // the response didn't validate
+    public static final String INVALID = "invalid";
+    // an exception instead of a response
+    public static final String FAILED = "failed";
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Test")
+    String test;
+
+    @Label("URL")
+    String url;
+
+    @Label("Request Body")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Body")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Started; call {@link #end(String)} when the request is done.
+     */
+    public static RequestEvent begin(String engine, String test, String url, String payload) {
+        RequestEvent event = new RequestEvent();
+        event.engine = engine;
+        event.test = test;
+        event.url = url;
+        event.requestBytes = payload == null ? 0 : payload.length();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param outcome {@link #OK}, {@link #INVALID} or {@link #FAILED}
+     * @param response what the engine returned, if anything: its size is recorded as the
+     *                 response body's (a String's length, a ByteBuffer's remaining bytes, or a
+     *                 streamed download's count)
+     */
+    public void end(String outcome, Object response) {
+        this.outcome = outcome;
+        this.responseBytes = size(response);
+        commit();
+    }
+
+    private static long size(Object response) {
+        if (response instanceof String) {
+            return ((String) response).length();
+        }
+        if (response instanceof ByteBuffer) {
+            return ((ByteBuffer) response).remaining();
+        }
+        if (response instanceof Long) {
+            return (Long) response;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,96 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * How the engine used its connections over a test method, as counted by the server.  Only the
+ * Netty mock services keep count (<code>GET /stats</code>); against WireMock this probe isn't used.
+ * Registers:
+ * <dl>
+ * <dt>connections</dt><dd>connections open when the method ended</dd>
+ * <dt>connectionsOpened</dt><dd>connections opened during the method</dd>
+ * <dt>streamsPerConnection</dt><dd>requests during the method over the connections it could have
+ * used: those open when it began plus those opened during it, so connections that come and go
+ * count each time.  Every HTTP/2 request is a stream; for HTTP/1.1 this is how often a connection
+ * was reused.</dd>
+ * </dl>
+ * Nothing is registered for a method that made no requests, e.g. a skipped test.
+ */
+public class ServerStatsProbe implements MethodProbe {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerStatsProbe.class);
+
+    public static final String PATH = "/stats";
+
+    private final MetricRegistry metricRegistry;
+    private final Class<?> testClass;
+    private final Supplier<String> stats;
+    private final ToLongFunction<String> requests;
+    private Map<String, Long> atBegin;
+
+    /**
+     * @param stats fetches {@link #PATH}
+     * @param requests the number of requests a test method made, by method name
+     */
+    public ServerStatsProbe(MetricRegistry metricRegistry, Class<?> testClass, Supplier<String> stats,
+                            ToLongFunction<String> requests) {
+        this.metricRegistry = metricRegistry;
+        this.testClass = testClass;
+        this.stats = stats;
+        this.requests = requests;
+    }
+
+    /**
+     * Whether the server keeps count.
+     */
+    public static boolean isSupported(Supplier<String> stats) {
+        try {
+            return parse(stats.get()).containsKey("connections");
+        } catch (Exception e) {
+            LOGGER.debug("No " + PATH + " on this server", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void begin(String method) {
+        atBegin = parse(stats.get());
+    }
+
+    @Override
+    public void end(String method) {
+        if (requests.applyAsLong(method) == 0) {
+            return;  // e.g. a skipped test
+        }
+        Map<String, Long> atEnd = parse(stats.get());
+        long connections = atEnd.get("connections");
+        long opened = atEnd.get("opened") - atBegin.get("opened");
+        // The server counts the /stats request that ends the method, too.
+        long requests = atEnd.get("requests") - atBegin.get("requests") - 1;
+        long perConnection = requests / Math.max(1, atBegin.get("connections") + opened);
+
+        metricRegistry.register(MetricRegistry.name(testClass, method, "connections"), (Gauge<Long>) () -> connections);
+        metricRegistry.register(MetricRegistry.name(testClass, method, "connectionsOpened"), (Gauge<Long>) () -> opened);
+        metricRegistry.register(MetricRegistry.name(testClass, method, "streamsPerConnection"), (Gauge<Long>) () -> perConnection);
+    }
+
+    // key=value lines
+    private static Map<String, Long> parse(String body) {
+        Map<String, Long> values = new HashMap<>();
+        for (String line : body.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq > 0) {
+                values.put(line.substring(0, eq).trim(), Long.parseLong(line.substring(eq + 1).trim()));
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,170 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Snapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the highest request rate a client sustains while meeting a latency SLO, e.g. p99 under
+ * 50 ms with at most 0.1% errors.
+ * <p></p>
+ * Starting from a low rate, each step offers the load for a while (see {@link Trial}) and checks
+ * the result against the SLO.  The rate grows by a factor until a step misses, and then we bisect
+ * between the last rate that met the SLO and the one that didn't, until they're close.  The answer
+ * is the highest rate that met it, or 0 if none did.
+ * <p></p>
+ * Latency should be measured from each request's intended start (see {@link ConstantRateLoad}),
+ * or an overloaded client looks better than it is.
+ */
+public class SloSearch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SloSearch.class);
+
+    // Enough to get within 0.1% of the first miss.
+    private static final int MAX_BISECTIONS = 10;
+
+    /**
+     * Offers <code>rate</code> requests per second for a while, and says what happened.
+     */
+    public interface Trial {
+        Step run(double rate);
+    }
+
+    /**
+     * What one step of the search measured.
+     */
+    public static class Step {
+        private final double rate;
+        private final Snapshot latencies;
+        private final long requests;
+        private final long errors;
+
+        /**
+         * @param latencies of the successful requests, in nanoseconds
+         */
+        public Step(double rate, Snapshot latencies, long requests, long errors) {
+            this.rate = rate;
+            this.latencies = latencies;
+            this.requests = requests;
+            this.errors = errors;
+        }
+
+        public double rate() {
+            return rate;
+        }
+
+        public double errorRate() {
+            return requests == 0 ? 0 : errors / (double) requests;
+        }
+
+        /**
+         * Nanoseconds.
+         */
+        public double latency(double percentile) {
+            return latencies.getValue(percentile / 100);
+        }
+    }
+
+    private final double percentile;
+    private final long latencyNanos;
+    private final double maxErrorRate;
+    private final double startRate;
+    private final double growth;
+    private final double precision;
+    private final double maxRate;
+    private final List<Step> steps = new ArrayList<>();
+
+    /**
+     * @param percentile   e.g. 99 for p99
+     * @param latencyNanos what that percentile must be under
+     * @param maxErrorRate the fraction of requests that may fail, e.g. 0.001
+     * @param startRate    requests per second of the first step
+     * @param growth       how much the rate grows each step until one misses, e.g. 2
+     * @param precision    stop bisecting once the bounds are within this fraction, e.g. 0.05
+     * @param maxRate      don't go past this many requests per second
+     */
+    public SloSearch(double percentile, long latencyNanos, double maxErrorRate,
+                     double startRate, double growth, double precision, double maxRate) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100], got " + percentile);
+        }
+        if (growth <= 1) {
+            throw new IllegalArgumentException("Growth must be more than 1, got " + growth);
+        }
+        this.percentile = percentile;
+        this.latencyNanos = latencyNanos;
+        this.maxErrorRate = maxErrorRate;
+        this.startRate = startRate;
+        this.growth = growth;
+        this.precision = precision;
+        this.maxRate = maxRate;
+    }
+
+    /**
+     * Whether the step met the SLO.
+     */
+    public boolean meets(Step step) {
+        return step.latency(percentile) <= latencyNanos && step.errorRate() <= maxErrorRate;
+    }
+
+    /**
+     * Runs the search; returns the highest rate (requests per second) that met the SLO, or 0.
+     */
+    public double search(Trial trial) {
+        double met = 0;
+        double missed;
+        double rate = startRate;
+        while (true) {
+            if (!run(trial, rate)) {
+                missed = rate;
+                break;
+            }
+            met = rate;
+            if (rate >= maxRate) {
+                return met;
+            }
+            rate = Math.min(maxRate, rate * growth);
+        }
+        for (int i = 0; i < MAX_BISECTIONS && missed - met > precision * missed; i++) {
+            rate = (met + missed) / 2;
+            if (run(trial, rate)) {
+                met = rate;
+            } else {
+                missed = rate;
+            }
+        }
+        return met;
+    }
+
+    /**
+     * The steps taken so far, in order.
+     */
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    private boolean run(Trial trial, double rate) {
+        Step step = trial.run(rate);
+        steps.add(step);
+        boolean met = meets(step);
+        LOGGER.info(String.format("%8.1f req/s: p%s %8.3f ms, errors %.4f%% - %s",
+                rate, formatPercentile(), step.latency(percentile) / 1e6, step.errorRate() * 100, met ? "met" : "missed"));
+        return met;
+    }
+
+    /**
+     * The SLO, e.g. <code>p99 under 50.000 ms with at most 0.1000% errors</code>.
+     */
+    @Override
+    public String toString() {
+        return String.format("p%s under %.3f ms with at most %.4f%% errors", formatPercentile(), latencyNanos / 1e6, maxErrorRate * 100);
+    }
+
+    private String formatPercentile() {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
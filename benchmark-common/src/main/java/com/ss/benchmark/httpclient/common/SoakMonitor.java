@@ -0,0 +1,304 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Reservoir;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Watches a long run for what only shows up over hours: memory, file descriptors or threads that
+ * keep growing, latency creeping up, throughput falling off.  Every interval a row of
+ * <pre>
+ * seconds,requests_per_second,errors,p50_ms,p99_ms,heap_after_gc_mb,direct_mb,open_fds,threads
+ * </pre>
+ * goes to the file given, the latencies and throughput for that interval alone, the rest as they
+ * are at its end.  Heap after GC is what the latest collection, young or full, left of the whole
+ * heap (see {@link HeapAfterGc}), blank until there's been one; direct memory as in
+ * {@link PeakMemory}; and open file descriptors need a Unix JVM (blank otherwise).  The threads
+ * are the whole JVM's, harness included.
+ * <p></p>
+ * At the end {@link #stop(double)} fits a least-squares line to each column, leaving out the
+ * warm-up, and flags a {@link Trend} that's both steady (the slope at least {@link #MIN_T} times
+ * its standard error) and big (a change of at least the given fraction over the fitted span):
+ * growth, except for requests per second, where it's a fall.  A leak climbs steadily and gets
+ * flagged; a sawtooth that comes back down, or noise, doesn't.
+ * <p></p>
+ * The latencies come from the soak test's timer: {@link #reservoir(Reservoir)} wraps its
+ * reservoir so every update is recorded here too.
+ */
+public class SoakMonitor {
+
+    // how many standard errors a slope must be from flat to be a trend rather than noise
+    public static final double MIN_T = 3;
+    // fewer samples than this past the warm-up and nothing is flagged
+    public static final int MIN_SAMPLES = 5;
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    /**
+     * What's sampled, in the order of the file's columns after seconds.
+     */
+    public enum Column {
+        REQUESTS_PER_SECOND("requests_per_second", false),
+        ERRORS("errors", true),
+        P50_MS("p50_ms", true),
+        P99_MS("p99_ms", true),
+        HEAP_AFTER_GC_MB("heap_after_gc_mb", true),
+        DIRECT_MB("direct_mb", true),
+        OPEN_FDS("open_fds", true),
+        THREADS("threads", true);
+
+        private final String header;
+        // whether it's going up that's bad, or going down
+        private final boolean growthIsBad;
+
+        Column(String header, boolean growthIsBad) {
+            this.header = header;
+            this.growthIsBad = growthIsBad;
+        }
+
+        public String header() {
+            return header;
+        }
+    }
+
+    /**
+     * The line fitted to one column.  start and end are the fitted values at the first and last
+     * samples past the warm-up; change is end over start, less one (infinite if it grew from 0).
+     */
+    public static class Trend {
+        private final Column column;
+        private final int samples;
+        private final double start;
+        private final double end;
+        private final double slopePerHour;
+        private final double t;
+        private final boolean flagged;
+
+        Trend(Column column, int samples, double start, double end, double slopePerHour, double t, boolean flagged) {
+            this.column = column;
+            this.samples = samples;
+            this.start = start;
+            this.end = end;
+            this.slopePerHour = slopePerHour;
+            this.t = t;
+            this.flagged = flagged;
+        }
+
+        public Column column() {
+            return column;
+        }
+
+        public double change() {
+            return change(start, end);
+        }
+
+        static double change(double start, double end) {
+            if (start == end) {
+                return 0;
+            }
+            return start == 0 ? Math.copySign(Double.POSITIVE_INFINITY, end) : (end - start) / Math.abs(start);
+        }
+
+        public boolean isFlagged() {
+            return flagged;
+        }
+
+        public static String header() {
+            return "column,samples,start,end,slope_per_hour,change,t,flagged";
+        }
+
+        public String toCsv() {
+            return String.format("%s,%d,%.6g,%.6g,%.6g,%.4f,%.2f,%b",
+                    column.header, samples, start, end, slopePerHour, change(), t, flagged);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %.1f%% (%.4g to %.4g, %.4g/hour, t=%.1f)",
+                    column.header, change() < 0 ? "fell" : "grew", Math.abs(change()) * 100, start, end, slopePerHour, t);
+        }
+    }
+
+    private final File file;
+    private final LongSupplier errors;
+    private final long interval;
+    private final TimeUnit unit;
+    private final double warmupSeconds;
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "soak");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this.
+    private final List<double[]> samples = new ArrayList<>();
+    private PrintStream out;
+    private long startNanos;
+    private long intervalStartNanos;
+    private long errorsAtIntervalStart;
+    private Histogram intervalHistogram;
+
+    /**
+     * @param errors the failed requests so far
+     * @param warmupSeconds how much of the start of the run to leave out of the trends
+     */
+    public SoakMonitor(File file, LongSupplier errors, long interval, TimeUnit unit, double warmupSeconds) {
+        this.file = file;
+        this.errors = errors;
+        this.interval = interval;
+        this.unit = unit;
+        this.warmupSeconds = warmupSeconds;
+        HeapAfterGc.install();
+    }
+
+    /**
+     * The soak test's timer's reservoir, recording into this monitor as well.
+     */
+    public Reservoir reservoir(Reservoir reservoir) {
+        return new RecordingReservoir(reservoir, recorder);
+    }
+
+    public synchronized void start() {
+        out = Exceptions.rethrowChecked(() -> new PrintStream(new FileOutputStream(file), false, StandardCharsets.UTF_8));
+        out.print("seconds");
+        for (Column column : Column.values()) {
+            out.print("," + column.header);
+        }
+        out.println();
+        recorder.reset();
+        errorsAtIntervalStart = errors.getAsLong();
+        startNanos = System.nanoTime();
+        intervalStartNanos = startNanos;
+        scheduler.scheduleAtFixedRate(this::sample, interval, interval, unit);
+    }
+
+    /**
+     * Stops sampling (a last, partial interval isn't) and fits the trends.
+     *
+     * @param threshold the fraction a column must grow (or requests per second fall) by to be flagged
+     */
+    public synchronized List<Trend> stop(double threshold) {
+        scheduler.shutdownNow();
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        List<Trend> trends = new ArrayList<>();
+        for (Column column : Column.values()) {
+            Trend trend = fit(column, threshold);
+            if (trend != null) {
+                trends.add(trend);
+            }
+        }
+        return trends;
+    }
+
+    private synchronized void sample() {
+        if (out == null) {
+            return;  // stopped while this one waited
+        }
+        long now = System.nanoTime();
+        double seconds = (now - intervalStartNanos) / 1e9;
+        intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
+        long errorsNow = errors.getAsLong();
+        long intervalErrors = errorsNow - errorsAtIntervalStart;
+        long successes = intervalHistogram.getTotalCount();
+
+        double[] row = new double[Column.values().length + 1];
+        row[0] = (now - startNanos) / 1e9;
+        row[1 + Column.REQUESTS_PER_SECOND.ordinal()] = seconds > 0 ? (successes + intervalErrors) / seconds : 0;
+        row[1 + Column.ERRORS.ordinal()] = intervalErrors;
+        row[1 + Column.P50_MS.ordinal()] = successes == 0 ? Double.NaN : intervalHistogram.getValueAtPercentile(50) / NANOS_PER_MILLI;
+        row[1 + Column.P99_MS.ordinal()] = successes == 0 ? Double.NaN : intervalHistogram.getValueAtPercentile(99) / NANOS_PER_MILLI;
+        long heapAfterGc = HeapAfterGc.bytes();
+        row[1 + Column.HEAP_AFTER_GC_MB.ordinal()] = heapAfterGc < 0 ? Double.NaN : heapAfterGc / BYTES_PER_MB;
+        row[1 + Column.DIRECT_MB.ordinal()] = PeakMemory.directNow() / BYTES_PER_MB;
+        row[1 + Column.OPEN_FDS.ordinal()] = os instanceof com.sun.management.UnixOperatingSystemMXBean
+                ? ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount()
+                : Double.NaN;
+        row[1 + Column.THREADS.ordinal()] = threads.getThreadCount();
+        samples.add(row);
+
+        out.printf("%.3f", row[0]);
+        for (int i = 1; i < row.length; i++) {
+            // blank for unknown, e.g. no successes in the interval
+            out.print(Double.isNaN(row[i]) ? "," : String.format(",%.3f", row[i]));
+        }
+        out.println();
+        out.flush();  // so a run that's killed still leaves its samples
+
+        errorsAtIntervalStart = errorsNow;
+        intervalStartNanos = now;
+    }
+
+    // Least squares over the samples past the warm-up; null if there's nothing to fit.
+    private Trend fit(Column column, double threshold) {
+        List<double[]> points = new ArrayList<>();
+        for (double[] row : samples) {
+            double value = row[1 + column.ordinal()];
+            if (row[0] >= warmupSeconds && !Double.isNaN(value)) {
+                points.add(new double[] { row[0], value });
+            }
+        }
+        int n = points.size();
+        if (n < 2) {
+            return null;
+        }
+        double meanX = points.stream().mapToDouble(p -> p[0]).average().orElse(0);
+        double meanY = points.stream().mapToDouble(p -> p[1]).average().orElse(0);
+        double sxx = 0;
+        double sxy = 0;
+        for (double[] p : points) {
+            sxx += (p[0] - meanX) * (p[0] - meanX);
+            sxy += (p[0] - meanX) * (p[1] - meanY);
+        }
+        double slope = sxx == 0 ? 0 : sxy / sxx;
+        double intercept = meanY - slope * meanX;
+        double sse = 0;
+        for (double[] p : points) {
+            double residual = p[1] - (intercept + slope * p[0]);
+            sse += residual * residual;
+        }
+        double t;
+        if (n < 3 || sxx == 0) {
+            t = 0;
+        } else {
+            double standardError = Math.sqrt(sse / (n - 2) / sxx);
+            // a perfectly straight line, e.g. a thread started every interval
+            t = standardError == 0 ? (slope == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, slope)) : slope / standardError;
+        }
+        double start = intercept + slope * points.get(0)[0];
+        double end = intercept + slope * points.get(n - 1)[0];
+        double change = Trend.change(start, end);
+        boolean flagged = n >= MIN_SAMPLES && (column.growthIsBad
+                ? t >= MIN_T && change >= threshold
+                : t <= -MIN_T && change <= -threshold);
+        return new Trend(column, n, start, end, slope * 3600, t, flagged);
+    }
+
+    public static void write(File file, List<Trend> trends) {
+        try (PrintStream out = Exceptions.rethrowChecked(() -> new PrintStream(new FileOutputStream(file), false, StandardCharsets.UTF_8))) {
+            out.println(Trend.header());
+            trends.forEach(trend -> out.println(trend.toCsv()));
+        }
+    }
+}
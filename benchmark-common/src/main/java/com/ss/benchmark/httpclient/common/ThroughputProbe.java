@@ -0,0 +1,44 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Requests per second over a test method, from its first invocation to the start of the next
+ * method, registered as the <code>requestsPerSecond</code> gauge.  The timers' mean rate won't
+ * do: it runs from when the timer was made to when it's reported, which is the end of the run.
+ */
+public class ThroughputProbe implements MethodProbe {
+
+    private final MetricRegistry metricRegistry;
+    private final Class<?> testClass;
+    private final ToLongFunction<String> requests;
+    private long beginNanos;
+
+    /**
+     * @param requests the number of requests a test method made, by method name
+     */
+    public ThroughputProbe(MetricRegistry metricRegistry, Class<?> testClass, ToLongFunction<String> requests) {
+        this.metricRegistry = metricRegistry;
+        this.testClass = testClass;
+        this.requests = requests;
+    }
+
+    @Override
+    public void begin(String method) {
+        beginNanos = System.nanoTime();
+    }
+
+    @Override
+    public void end(String method) {
+        long nanos = System.nanoTime() - beginNanos;
+        long count = requests.applyAsLong(method);
+        if (count == 0) {
+            return;  // e.g. a skipped test
+        }
+        double perSecond = count * 1e9 / nanos;
+        metricRegistry.register(MetricRegistry.name(testClass, method, "requestsPerSecond"), (Gauge<Double>) () -> perSecond);
+    }
+}
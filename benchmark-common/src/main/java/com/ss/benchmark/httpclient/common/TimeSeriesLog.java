@@ -0,0 +1,148 @@
+package com.ss.benchmark.httpclient.common;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a test method did over time: every interval (<code>bm.timeseries.seconds</code>, off by
+ * default) a row of throughput, errors and latency percentiles for that interval alone, in
+ * <code>&lt;class&gt;.&lt;method&gt;.timeseries.csv</code>:
+ * <pre>
+ * seconds,requests_per_second,errors,p50_ms,p90_ms,p99_ms,max_ms
+ * </pre>
+ * where seconds is the end of the interval, from the start of the method.  Warm-up, GC pauses and
+ * a collapse part way through show up here, where the end-of-run CSVs average them away.
+ * <p></p>
+ * The latencies come from the method's timer: {@link #reservoir(String, Reservoir)} wraps its
+ * reservoir so every update is recorded here too, into a {@link Recorder} shared by all the
+ * threads timing that method.
+ */
+public class TimeSeriesLog implements MethodProbe {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final File dir;
+    private final MetricRegistry metricRegistry;
+    private final Class<?> testClass;
+    private final long interval;
+    private final TimeUnit unit;
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "time-series");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this.
+    private Series current;
+    private ScheduledFuture<?> ticks;
+
+    public TimeSeriesLog(File dir, MetricRegistry metricRegistry, Class<?> testClass, long interval, TimeUnit unit) {
+        this.dir = dir;
+        this.metricRegistry = metricRegistry;
+        this.testClass = testClass;
+        this.interval = interval;
+        this.unit = unit;
+    }
+
+    /**
+     * The reservoir for the timer called <code>name</code>, recording into this log as well.
+     */
+    public Reservoir reservoir(String name, Reservoir reservoir) {
+        return new RecordingReservoir(reservoir, recorders.computeIfAbsent(name, n -> new Recorder(SIGNIFICANT_DIGITS)));
+    }
+
+    @Override
+    public synchronized void begin(String method) {
+        current = new Series(method);
+        // intervals from the start of the method
+        ticks = scheduler.scheduleAtFixedRate(this::writeInterval, interval, interval, unit);
+    }
+
+    @Override
+    public synchronized void end(String method) {
+        if (current != null) {
+            ticks.cancel(false);
+            current.writeInterval();
+            current.out.close();
+            current = null;
+        }
+    }
+
+    public synchronized void close() {
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void writeInterval() {
+        if (current != null) {
+            current.writeInterval();
+        }
+    }
+
+    // One test method's file.
+    private class Series {
+        private final String timerName;
+        private final String errorsName;
+        private final PrintStream out;
+        private final long startNanos = System.nanoTime();
+        private long intervalStartNanos = startNanos;
+        private long errors;
+        private Histogram interval;
+
+        Series(String method) {
+            this.timerName = MetricRegistry.name(testClass, method, "timing");
+            this.errorsName = MetricRegistry.name(testClass, method, "errorRate");
+            this.out = Exceptions.rethrowChecked(() -> new PrintStream(
+                    new FileOutputStream(new File(dir, MetricRegistry.name(testClass, method, "timeseries") + ".csv")),
+                    false, StandardCharsets.UTF_8));
+            out.println("seconds,requests_per_second,errors,p50_ms,p90_ms,p99_ms,max_ms");
+            // whatever was recorded before the method began isn't ours
+            Recorder recorder = recorders.get(timerName);
+            if (recorder != null) {
+                recorder.reset();
+            }
+        }
+
+        void writeInterval() {
+            long now = System.nanoTime();
+            double seconds = (now - intervalStartNanos) / 1e9;
+            Recorder recorder = recorders.get(timerName);
+            if (recorder != null) {
+                interval = recorder.getIntervalHistogram(interval);
+            }
+            Counter errorCounter = metricRegistry.getCounters().get(errorsName);
+            long errorsNow = errorCounter == null ? 0 : errorCounter.getCount();
+            long intervalErrors = errorsNow - errors;
+            errors = errorsNow;
+
+            long successes = interval == null ? 0 : interval.getTotalCount();
+            out.printf("%.3f,%.1f,%d,%s,%s,%s,%s%n",
+                    (now - startNanos) / 1e9,
+                    seconds > 0 ? (successes + intervalErrors) / seconds : 0.0,
+                    intervalErrors,
+                    millis(successes, 50), millis(successes, 90), millis(successes, 99),
+                    successes == 0 ? "" : String.format("%.3f", interval.getMaxValue() / NANOS_PER_MILLI));
+            intervalStartNanos = now;
+        }
+
+        // blank if nothing finished in the interval
+        private String millis(long successes, double percentile) {
+            return successes == 0 ? "" : String.format("%.3f", interval.getValueAtPercentile(percentile) / NANOS_PER_MILLI);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.ss.benchmark.httpclient.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads (Java 21+), looked up reflectively so everything still builds and runs on 11.
+ * <p></p>
+ * <code>-Dbm.threads=virtual</code> asks the engines that run blocking calls on an executor of
+ * their own (e.g. <code>apachesync</code>) to use a thread per request instead of a fixed pool.
+ */
+public final class VirtualThreads {
+
+    public static final String THREADS = System.getProperty("bm.threads", "platform");
+
+    private static final Method NEW_PER_TASK_EXECUTOR = lookup();
+
+    private VirtualThreads() {}
+
+    public static boolean isSupported() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Whether <code>-Dbm.threads=virtual</code> was given.
+     */
+    public static boolean requested() {
+        return "virtual".equals(THREADS);
+    }
+
+    /**
+     * An executor that starts a new virtual thread for each task.
+     *
+     * @throws UnsupportedOperationException below Java 21
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads need Java 21+, this is " + System.getProperty("java.version"));
+        }
+        return Exceptions.rethrowChecked(() -> (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null));
+    }
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
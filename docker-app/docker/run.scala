@@ -2,7 +2,10 @@ import java.io.File
 
 import scala.sys.process._
 
-val usage = "Usage: (test --no-reporter (all | <client>) [<host> <port> <executions> <workers>]) | server | list | report <dir> | help"
+val usage = "Usage: (test --no-reporter (all | <client>) [<host> <port> <executions> <workers>]) | " +
+  "(sweep (all | <client>) <host> <port> <executions> <pool sizes> <worker counts> [<test>]) | " +
+  "(netty (all | <client>) <host> <port> <executions> <workers> <thread counts> [<test>]) | " +
+  "server | list | report <dir> | compare <baseline dir> <candidate dir> | net <dir> | help"
 
 val suiteFileDir = "testng"
 
@@ -17,9 +20,15 @@ args.filter { _ != disableReporterFlag }.toList match {
   case List("test", c    , h, p, e, w) => runTest(c, h, p.toInt, Some(e.toInt), Some(w.toInt))
   case List("test", "all")             => runAllTests("localhost", 8080)
   case List("test", client)            => runTest(client, "localhost", 8080)
+  case List("sweep", c, h, p, e, ps, ws)       => runSweep(c, h, p.toInt, e.toInt, ints(ps), ints(ws))
+  case List("sweep", c, h, p, e, ps, ws, test) => runSweep(c, h, p.toInt, e.toInt, ints(ps), ints(ws), test)
+  case List("netty", c, h, p, e, w, ts)       => runNettyMatrix(c, h, p.toInt, e.toInt, w.toInt, ints(ts))
+  case List("netty", c, h, p, e, w, ts, test) => runNettyMatrix(c, h, p.toInt, e.toInt, w.toInt, ints(ts), test)
   case List("list")                    => listClients()
   case List("server")                  => runServer()
   case List("report", dir)             => generateReport(dir)
+  case List("compare", b, c)           => compare(b, c)
+  case List("net", dir)                => net(dir)
   case _                               => exitWithUsage()
 }
 
@@ -30,6 +39,16 @@ def generateReport(dir: String): Unit = {
   s"""java -jar ${jarPath("reporter")} $dir""".!
 }
 
+// Each client's numbers less the loopback engine's, i.e. without the harness's cost.
+def net(dir: String): Unit = {
+  s"""java -jar ${jarPath("reporter")} net $dir""".!
+}
+
+// Exits like the reporter does: 1 if the candidate regressed, so it can gate an upgrade.
+def compare(baselineDir: String, candidateDir: String): Unit = {
+  sys.exit(s"""java -jar ${jarPath("reporter")} compare $baselineDir $candidateDir""".!)
+}
+
 def runAllTests(
   host: String,
   port: Int,
@@ -63,6 +82,104 @@ def runTest(
   cmd.!
 }
 
+// 10,50,200
+def ints(csv: String): Seq[Int] = csv.split(",").map { _.trim.toInt }.toSeq
+
+// One JVM per pool size and worker count, running just the one test, each with its own metrics
+// directory under $BM.METRICS.DIR/sweep.  The reporter then finds the knee in sweep.csv.
+def runSweep(
+  client: String,
+  host: String,
+  port: Int,
+  executions: Int,
+  poolSizes: Seq[Int],
+  workerCounts: Seq[Int],
+  test: String = "testBlockingSyncShortGET"
+): Unit = {
+  val sweepDir = new File(sys.env.getOrElse("BM.METRICS.DIR", "metrics-csv"), "sweep")
+  val sweepClients = if (client == "all") clients() else Seq(client)
+
+  for (c <- sweepClients; pool <- poolSizes; workers <- workerCounts) {
+    val pointDir = new File(sweepDir, s"$c/pool_$pool-workers_$workers")
+    val testClass = s"benchmark.$c.PerformanceTests"
+    val cmd = Seq(
+      "java",
+      s"-Dbm.host=$host",
+      s"-Dbm.port=$port",
+      s"-Dbm.test.executions=$executions",
+      s"-Dbm.test.workers=$workers",
+      s"-Dbm.pool.size=$pool",
+      "-Dbm.dropwizard.seconds=3600",
+      "-jar", jarPath(s"$c-benchmark"),
+      "-usedefaultlisteners", "false",
+      "-listener", "com.ss.benchmark.httpclient.common.Transformer",
+      "-methods", s"$testClass.testWarmupCache,$testClass.$test")
+    println(s"Executing:  ${cmd.mkString(" ")}")
+    Process(cmd, None, "BM.METRICS.DIR" -> pointDir.getPath).!
+  }
+
+  val sweepCsv = new File(sweepDir, "sweep.csv")
+  (s"java -jar ${jarPath("reporter")} sweep $sweepDir" #> sweepCsv).!
+  println(s"Wrote ${sweepCsv.getPath}")
+}
+
+val nettyClients = Seq("asynchttpclient", "reactornetty", "rxnetty")
+
+// Same idea as the sweep, over the Netty engines' transport (epoll, nio), allocator (pooled,
+// unpooled), buffers (heap, direct) and event-loop threads, under $BM.METRICS.DIR/netty.  The
+// reporter lines them up in netty.csv.  The epoll arm only runs where the client's Netty can load
+// epoll (Linux); elsewhere it would just be NIO again under another name.
+def runNettyMatrix(
+  client: String,
+  host: String,
+  port: Int,
+  executions: Int,
+  workers: Int,
+  threadCounts: Seq[Int],
+  test: String = "testBlockingAsyncShortGET"
+): Unit = {
+  val matrixDir = new File(sys.env.getOrElse("BM.METRICS.DIR", "metrics-csv"), "netty")
+  val matrixClients = if (client == "all") nettyClients.filter { clients().contains(_) } else Seq(client)
+
+  def epollAvailable(c: String): Boolean = {
+    val available = Seq("java", "-cp", jarPath(s"$c-benchmark"), "com.ss.benchmark.httpclient.common.NettyOptions").! == 0
+    if (!available) println(s"$c: epoll isn't available here, skipping the epoll runs")
+    available
+  }
+
+  for {
+    c         <- matrixClients
+    transport <- if (epollAvailable(c)) Seq("epoll", "nio") else Seq("nio")
+    allocator <- Seq("pooled", "unpooled")
+    buffers   <- Seq("heap", "direct")
+    threads   <- threadCounts
+  } {
+    val comboDir = new File(matrixDir, s"$c/$transport-$allocator-$buffers-threads_$threads")
+    val testClass = s"benchmark.$c.PerformanceTests"
+    val cmd = Seq(
+      "java",
+      s"-Dbm.host=$host",
+      s"-Dbm.port=$port",
+      s"-Dbm.test.executions=$executions",
+      s"-Dbm.test.workers=$workers",
+      s"-Dbm.netty.transport=$transport",
+      s"-Dbm.netty.allocator=$allocator",
+      s"-Dbm.netty.buffers=$buffers",
+      s"-Dbm.netty.threads=$threads",
+      "-Dbm.dropwizard.seconds=3600",
+      "-jar", jarPath(s"$c-benchmark"),
+      "-usedefaultlisteners", "false",
+      "-listener", "com.ss.benchmark.httpclient.common.Transformer",
+      "-methods", s"$testClass.testWarmupCache,$testClass.$test")
+    println(s"Executing:  ${cmd.mkString(" ")}")
+    Process(cmd, None, "BM.METRICS.DIR" -> comboDir.getPath).!
+  }
+
+  val matrixCsv = new File(matrixDir, "netty.csv")
+  (s"java -jar ${jarPath("reporter")} netty $matrixDir" #> matrixCsv).!
+  println(s"Wrote ${matrixCsv.getPath}")
+}
+
 def exitWithUsage(): Unit = {
   System.err.println(usage)
   System.exit(1)
@@ -0,0 +1,298 @@
+package benchmark.jdkhttpclient;
+
+import com.ss.benchmark.httpclient.common.Exceptions;
+import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import com.ss.benchmark.httpclient.common.HttpProtocol;
+import com.ss.benchmark.httpclient.common.PoolStats;
+import com.ss.benchmark.httpclient.common.VirtualThreads;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The JDK's own {@link HttpClient}.
+ * <p></p>
+ * The JDK client has no limit on the number of connections it opens; its
+ * <code>jdk.httpclient.connectionPoolSize</code> only bounds how many idle ones it keeps.  To give
+ * it the same {@link #MAX_CONNECTION_POOL_SIZE} semantics as the other engines, at most that many
+ * requests are in flight at once and the rest wait in a queue, like a pending acquire on a pool.
+ * <p></p>
+ * The executor the client hands its work to is picked with <code>-Dbm.jdkhttpclient.executor</code>:
+ * <dl>
+ * <dt>default</dt><dd>the client's own (a cached thread pool)</dd>
+ * <dt>fixed:N</dt><dd>a fixed pool of N threads</dd>
+ * <dt>cached</dt><dd>a cached pool we own</dd>
+ * <dt>forkjoin</dt><dd>the common ForkJoinPool</dd>
+ * <dt>direct</dt><dd>run everything on the client's selector thread</dd>
+ * <dt>virtual</dt><dd>a virtual thread per task (Java 21+)</dd>
+ * </dl>
+ * or passed in through {@link #Engine(Executor)}.
+ * <p></p>
+ * Speaks HTTP/2 too (<code>-Dbm.protocol=h2c|h2</code>).  The JDK client keeps one HTTP/2
+ * connection per host and multiplexes everything over it; the in-flight limit above then caps
+ * the number of concurrent streams instead (the mock service doesn't set one).  h2c is
+ * negotiated with <code>Upgrade: h2c</code> on the first request; for h2 any certificate is
+ * trusted, since the mock service's is self-signed.
+ */
+public class Engine implements HttpClientEngine {
+
+    private static final String EXECUTOR = System.getProperty("bm.jdkhttpclient.executor", "default");
+
+    private HttpClient client;
+    private String baseUrl;
+    private Executor executor;
+    private ExecutorService ownedExecutor;
+
+    private final Semaphore connections = new Semaphore(MAX_CONNECTION_POOL_SIZE);
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    // drainPending calls not yet seen to by the one draining
+    private final AtomicInteger drains = new AtomicInteger();
+
+    public Engine() {
+    }
+
+    public Engine(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void createClient(String host, int port) {
+        // Read once when the client's connection pool class is initialized.
+        if (System.getProperty("jdk.httpclient.connectionPoolSize") == null) {
+            System.setProperty("jdk.httpclient.connectionPoolSize", String.valueOf(MAX_CONNECTION_POOL_SIZE));
+        }
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(PROTOCOL.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT));
+        if (PROTOCOL == HttpProtocol.H2) {
+            // Also read once, when the client is first used.
+            if (System.getProperty("jdk.internal.httpclient.disableHostnameVerification") == null) {
+                System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+            }
+            builder.sslContext(trustAll());
+        }
+        if (executor == null) {
+            executor = mkExecutor(EXECUTOR);
+        }
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        client = builder.build();
+        baseUrl = url(host, port);
+    }
+
+    @Override
+    public CompletableFuture<String> nonblockingGET(String path) {
+        return execute(mkGet(path), BodyHandlers.ofString());
+    }
+
+    @Override
+    public CompletableFuture<String> nonblockingPOST(String path, String body) {
+        return execute(mkPost(path, body), BodyHandlers.ofString());
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingGETBytes(String path) {
+        return execute(mkGet(path), BodyHandlers.ofByteArray()).thenApply(ByteBuffer::wrap);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingPOSTBytes(String path, String body) {
+        return execute(mkPost(path, body), BodyHandlers.ofByteArray()).thenApply(ByteBuffer::wrap);
+    }
+
+    @Override
+    public CompletableFuture<Long> nonblockingStreamGET(String path) {
+        return execute(mkGet(path), responseInfo -> BodySubscribers.fromSubscriber(new CountingSubscriber(), CountingSubscriber::bytes));
+    }
+
+    // Counts the body as the client hands it over; the buffers are dropped once counted.
+    private static class CountingSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+        private long bytes;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                bytes += buffer.remaining();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        long bytes() {
+            return bytes;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private HttpRequest mkGet(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofMillis(READ_TIMEOUT))
+                .GET()
+                .build();
+    }
+
+    private HttpRequest mkPost(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofMillis(READ_TIMEOUT))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    @Override
+    public boolean supports(HttpProtocol protocol) {
+        return true;
+    }
+
+    private <T> CompletableFuture<T> execute(HttpRequest request, BodyHandler<T> bodyHandler) {
+        return withConnection(() -> client.sendAsync(request, bodyHandler))
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Unexpected response code : " + response.statusCode());
+                    }
+                    return response.body();
+                });
+    }
+
+    // The client doesn't show its connections, only our in-flight limit in front of it: leased is
+    // what's in flight, pending what's queued.
+    @Override
+    public PoolStats poolStats() {
+        return new PoolStats(MAX_CONNECTION_POOL_SIZE - connections.availablePermits(), PoolStats.UNKNOWN, pending.size(),
+                PoolStats.UNKNOWN, PoolStats.UNKNOWN);
+    }
+
+    // Runs the request now if we're under MAX_CONNECTION_POOL_SIZE, otherwise once a slot frees up.
+    private <T> CompletableFuture<HttpResponse<T>> withConnection(Supplier<CompletableFuture<HttpResponse<T>>> send) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            CompletableFuture<HttpResponse<T>> cf;
+            try {
+                cf = send.get();
+            } catch (Exception e) {
+                cf = CompletableFuture.failedFuture(e);
+            }
+            cf.whenComplete((response, ex) -> {
+                connections.release();
+                drainPending();
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                } else {
+                    result.complete(response);
+                }
+            });
+        };
+        pending.add(task);
+        drainPending();
+        return result;
+    }
+
+    // A request that completes inside task.run() (e.g. sendAsync failing straight away) calls back
+    // in here; rather than recursing, one drain at a time loops until no more were asked for.
+    private void drainPending() {
+        if (drains.getAndIncrement() != 0) {
+            return;
+        }
+        int asked = 1;
+        do {
+            while (!pending.isEmpty() && connections.tryAcquire()) {
+                Runnable task = pending.poll();
+                if (task == null) {
+                    connections.release();
+                    break;
+                }
+                task.run();
+            }
+            asked = drains.addAndGet(-asked);
+        } while (asked != 0);
+    }
+
+    private static SSLContext trustAll() {
+        TrustManager trustAll = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        return Exceptions.rethrowChecked(() -> {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[] {trustAll}, new SecureRandom());
+            return sslContext;
+        });
+    }
+
+    private Executor mkExecutor(String spec) {
+        if (spec.startsWith("fixed:")) {
+            ownedExecutor = Executors.newFixedThreadPool(Integer.parseInt(spec.substring("fixed:".length())));
+            return ownedExecutor;
+        }
+        switch (spec) {
+            case "default":
+                return null;
+            case "cached":
+                ownedExecutor = Executors.newCachedThreadPool();
+                return ownedExecutor;
+            case "forkjoin":
+                return ForkJoinPool.commonPool();
+            case "direct":
+                return Runnable::run;
+            case "virtual":
+                ownedExecutor = VirtualThreads.newPerTaskExecutor();
+                return ownedExecutor;
+            default:
+                throw new IllegalArgumentException("Unknown bm.jdkhttpclient.executor: " + spec);
+        }
+    }
+}
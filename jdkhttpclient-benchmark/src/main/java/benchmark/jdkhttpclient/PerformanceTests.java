@@ -0,0 +1,15 @@
+package benchmark.jdkhttpclient;
+
+import com.ss.benchmark.httpclient.common.BasePerformanceTest;
+import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import org.testng.annotations.Test;
+
+@Test(groups = "performance")
+public class PerformanceTests extends BasePerformanceTest {
+
+    @Override
+    protected HttpClientEngine getClient() {
+        return new Engine();
+    }
+}
+
@@ -0,0 +1,82 @@
+package benchmark.jmh;
+
+import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import com.ss.benchmark.httpclient.common.Payloads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/**
+ * One {@link HttpClientEngine} per trial, talking to a {@link LocalMockService} that is started
+ * alongside it (or to <code>-Dbm.host</code>/<code>-Dbm.port</code> if a host is given).
+ * <p></p>
+ * The engine is looked up by convention: <code>reactornetty</code> is
+ * <code>benchmark.reactornetty.Engine</code>, and so on.
+ */
+@State(Scope.Benchmark)
+public class EngineState {
+
+    private static final String SERVER_HOST = System.getProperty("bm.host");
+    private static final int SERVER_PORT = Integer.parseInt(System.getProperty("bm.port", "8080"));
+
+    @Param({"reactornetty", "rxnetty", "apacheasync", "apachesync", "asynchttpclient", "jdkhttpclient"})
+    public String engine;
+
+    @Param({"short", "long"})
+    public String payloadSize;
+
+    HttpClientEngine client;
+    String url;
+    String payload;
+
+    private LocalMockService mockService;
+
+    @Setup
+    public void setup() throws Exception {
+        String host = SERVER_HOST;
+        int port = SERVER_PORT;
+        if (host == null) {
+            mockService = LocalMockService.start();
+            host = "localhost";
+            port = mockService.getPort();
+        }
+
+        switch (payloadSize) {
+            case "short":
+                url = "/short";
+                payload = Payloads.SHORT;
+                break;
+            case "long":
+                url = "/long";
+                payload = Payloads.LONG;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown payload size: " + payloadSize);
+        }
+
+        client = (HttpClientEngine) Class.forName("benchmark." + engine + ".Engine")
+                .getDeclaredConstructor()
+                .newInstance();
+        client.createClient(host, port);
+
+        // Fail fast rather than benchmarking error paths.
+        if (!payload.equals(client.blockingGET(url))) {
+            throw new IllegalStateException(engine + " did not return the expected payload for " + url);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try {
+            client.close();
+        } finally {
+            if (mockService != null) {
+                mockService.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH counterpart of the TestNG scenarios: GET and POST of the short/long payloads, through the
+ * engine's blocking and asynchronous calls.  The POSTs send the same payload they expect back.
+ * <p></p>
+ * Concurrency is JMH's business, e.g. <code>-t 40</code> to match the TestNG blocking workers.
+ * The asynchronous ones also keep <code>window</code> requests in flight on each thread (see
+ * {@link InFlight}), so an operation is a request sent while others are outstanding, not a round
+ * trip; their SampleTime is the time between responses, not the latency.  The response is
+ * returned so JMH consumes it.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(2)
+public class HttpClientBenchmark {
+
+    @Benchmark
+    public String blockingGET(EngineState state) {
+        return state.client.blockingGET(state.url);
+    }
+
+    @Benchmark
+    public String blockingPOST(EngineState state) {
+        return state.client.blockingPOST(state.url, state.payload);
+    }
+
+    @Benchmark
+    public String asyncGET(EngineState state, InFlight inFlight) {
+        return inFlight.send(state.client.nonblockingGET(state.url));
+    }
+
+    @Benchmark
+    public String asyncPOST(EngineState state, InFlight inFlight) {
+        return inFlight.send(state.client.nonblockingPOST(state.url, state.payload));
+    }
+}
@@ -0,0 +1,41 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A benchmark thread's asynchronous requests that haven't been waited for yet.  Each operation
+ * sends one and, once <code>window</code> are outstanding, waits for the oldest, so the thread
+ * keeps that many in flight instead of waiting on each request it sends.
+ */
+@State(Scope.Thread)
+public class InFlight {
+
+    @Param({"8"})
+    public int window;
+
+    private final Queue<CompletableFuture<String>> pending = new ArrayDeque<>();
+
+    /**
+     * Adds <code>request</code>; returns the oldest response if the window is full, else null.
+     */
+    String send(CompletableFuture<String> request) {
+        pending.add(request);
+        return pending.size() < window ? null : pending.remove().join();
+    }
+
+    // so an iteration's requests don't finish in the next one's time
+    @TearDown(Level.Iteration)
+    public void drain() {
+        while (!pending.isEmpty()) {
+            pending.remove().join();
+        }
+    }
+}
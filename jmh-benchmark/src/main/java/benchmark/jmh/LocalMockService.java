@@ -0,0 +1,99 @@
+package benchmark.jmh;
+
+import com.ss.benchmark.MockService;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link MockService} in its own JVM on free ports.  Keeping it out of the benchmark JVM
+ * means the server's CPU and allocations don't show up in JMH's numbers (e.g. <code>-prof gc</code>).
+ */
+class LocalMockService implements Closeable {
+
+    private static final String STARTED = "Successfully started the mock service";
+
+    private final Process process;
+    private final int port;
+
+    private LocalMockService(Process process, int port) {
+        this.process = process;
+        this.port = port;
+    }
+
+    static LocalMockService start() throws IOException {
+        int httpPort = freePort();
+        int httpsPort = freePort();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(
+                java,
+                "-cp", System.getProperty("java.class.path"),
+                "-Dhttp.port=" + httpPort,
+                "-Dhttps.port=" + httpsPort,
+                MockService.class.getName())
+                .redirectErrorStream(true)
+                .start();
+
+        LocalMockService service = new LocalMockService(process, httpPort);
+        service.awaitStartup();
+        return service;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    // MockService logs this once its stubs are in place.
+    private void awaitStartup() throws IOException {
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (line.contains(STARTED)) {
+                drain(output);
+                return;
+            }
+        }
+        close();
+        throw new IOException("The mock service exited before it started listening on " + port);
+    }
+
+    // Nobody reads the server's log, but it must not block on a full pipe.
+    private static void drain(BufferedReader output) {
+        Thread t = new Thread(() -> {
+            try {
+                while (output.readLine() != null) {
+                    // discard
+                }
+            } catch (IOException e) {
+                // the process went away
+            }
+        }, "mock-service-output");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package benchmark.loopback;
+
+import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import com.ss.benchmark.httpclient.common.Payloads;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * No client at all: every request completes at once, on the caller's thread, with what the mock
+ * service would have answered.  No sockets, no threads, nothing to wait for, so whatever it
+ * measures is the harness itself (timers, latches, validation, the TestNG machinery).  Run it
+ * like any other engine and subtract (see the reporter's <code>net</code>) to see how much of a
+ * real engine's numbers is ours.
+ * <p></p>
+ * Knows the mock service's paths: <code>/hello</code>, <code>/short</code>, <code>/long</code>,
+ * <code>/bytes/{size}</code> and <code>/stream/{size}</code>.  POSTs echo the body, which is what
+ * the tests expect back.  Anything else fails, so e.g. the server stats aren't collected.
+ */
+public class Engine implements HttpClientEngine {
+
+    private static final String BYTES = "/bytes/";
+    private static final String STREAM = "/stream/";
+
+    private static final ByteBuffer SHORT = ByteBuffer.wrap(Payloads.bytes(Payloads.SHORT.length()));
+    private static final ByteBuffer LONG = ByteBuffer.wrap(Payloads.bytes(Payloads.LONG.length()));
+
+    @Override
+    public void createClient(String host, int port) {
+        // nothing to connect to
+    }
+
+    @Override
+    public String blockingGET(String path) {
+        return response(path);
+    }
+
+    @Override
+    public String blockingPOST(String path, String body) {
+        return body;
+    }
+
+    @Override
+    public CompletableFuture<String> nonblockingGET(String path) {
+        try {
+            return CompletableFuture.completedFuture(response(path));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> nonblockingPOST(String path, String body) {
+        return CompletableFuture.completedFuture(body);
+    }
+
+    @Override
+    public ByteBuffer blockingGETBytes(String path) {
+        return responseBytes(path);
+    }
+
+    @Override
+    public ByteBuffer blockingPOSTBytes(String path, String body) {
+        return bytes(body);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingGETBytes(String path) {
+        try {
+            return CompletableFuture.completedFuture(responseBytes(path));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingPOSTBytes(String path, String body) {
+        return CompletableFuture.completedFuture(bytes(body));
+    }
+
+    @Override
+    public CompletableFuture<Long> nonblockingStreamGET(String path) {
+        if (!path.startsWith(STREAM)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Not a stream: " + path));
+        }
+        return CompletableFuture.completedFuture(Long.parseLong(path.substring(STREAM.length())));
+    }
+
+    private static String response(String path) {
+        switch (path) {
+            case "/hello":
+                return Payloads.HELLO;
+            case "/short":
+                return Payloads.SHORT;
+            case "/long":
+                return Payloads.LONG;
+            default:
+                if (path.startsWith(BYTES)) {
+                    return Payloads.of(Integer.parseInt(path.substring(BYTES.length())));
+                }
+                throw new IllegalArgumentException("The loopback engine doesn't know " + path);
+        }
+    }
+
+    // Shared buffers, so only the view is new.
+    private static ByteBuffer responseBytes(String path) {
+        switch (path) {
+            case "/short":
+                return SHORT.duplicate();
+            case "/long":
+                return LONG.duplicate();
+            default:
+                return bytes(response(path));
+        }
+    }
+
+    // The bodies are all Payloads, whose bytes are cached by length.
+    private static ByteBuffer bytes(String body) {
+        return ByteBuffer.wrap(Payloads.bytes(body.length()));
+    }
+}
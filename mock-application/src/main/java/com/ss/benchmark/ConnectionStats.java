@@ -0,0 +1,37 @@
+package com.ss.benchmark;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How many connections the clients have open to one of the Netty mocks, how many they have
+ * opened so far, and how many requests (HTTP/2 streams) came in over them.  Served as plain
+ * <code>key=value</code> lines from <code>/stats</code>.
+ */
+class ConnectionStats {
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong opened = new AtomicLong();
+    // Bumped on every request, from every event loop.
+    private final LongAdder requests = new LongAdder();
+
+    void connectionOpened() {
+        active.incrementAndGet();
+        opened.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        active.decrementAndGet();
+    }
+
+    void request() {
+        requests.increment();
+    }
+
+    String render() {
+        return "connections=" + active.get() + "\n"
+                + "opened=" + opened.get() + "\n"
+                + "requests=" + requests.sum() + "\n";
+    }
+}
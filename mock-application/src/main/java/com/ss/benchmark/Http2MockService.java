@@ -0,0 +1,169 @@
+package com.ss.benchmark;
+
+import com.ss.benchmark.httpclient.common.Exceptions;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.util.AsciiString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.KeyManagerFactory;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.Map;
+
+/**
+ * A Netty server that speaks HTTP/2 as well as HTTP/1.1, serving the same stubs as
+ * {@link MockService} (WireMock's Jetty can't do HTTP/2).
+ * <dl>
+ * <dt>cleartext port</dt>
+ * <dd>HTTP/1.1, h2c with prior knowledge, or h2c via <code>Upgrade: h2c</code></dd>
+ * <dt>TLS port</dt>
+ * <dd>h2 or HTTP/1.1, negotiated with ALPN.  Uses WireMock's self-signed certificate.</dd>
+ * </dl>
+ * Having both protocols on one server means an HTTP/1.1 run and an HTTP/2 run are measured
+ * against the same thing.  <code>GET /stats</code> tells how many connections the clients used.
+ */
+public class Http2MockService implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(Http2MockService.class);
+
+    // Enough for Payloads.LONG, both ways.
+    private static final int MAX_CONTENT_LENGTH = 10 * 1024 * 1024;
+
+    private final ConnectionStats stats = new ConnectionStats();
+    private final EventLoopGroup boss = new NioEventLoopGroup(1);
+    private final EventLoopGroup workers = new NioEventLoopGroup();
+    private final SslContext sslContext;
+
+    /**
+     * @param delays stub path to how long it takes to answer; paths that aren't there answer right away
+     */
+    public Http2MockService(int cleartextPort, int tlsPort, Map<String, LatencyModel> delays) {
+        sslContext = Exceptions.rethrowChecked(Http2MockService::mkSslContext);
+
+        bind(cleartextPort, new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                track(ch);
+                HttpServerCodec sourceCodec = new HttpServerCodec();
+                HttpToHttp2ConnectionHandler http2 = http2Handler();
+                HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(
+                        sourceCodec,
+                        protocol -> AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                                ? new Http2ServerUpgradeCodec(http2)
+                                : null,
+                        MAX_CONTENT_LENGTH);
+                ch.pipeline().addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, http2));
+                // Plain HTTP/1.1 requests come through in pieces; HTTP/2 ones are already whole.
+                ch.pipeline().addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+                ch.pipeline().addLast(new MockHttpHandler(stats, delays));
+            }
+        });
+
+        bind(tlsPort, new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                track(ch);
+                ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                ch.pipeline().addLast(new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+                    @Override
+                    protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+                        ChannelPipeline p = ctx.pipeline();
+                        if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                            p.addLast(http2Handler());
+                        } else {
+                            p.addLast(new HttpServerCodec());
+                            p.addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+                        }
+                        p.addLast(new MockHttpHandler(stats, delays));
+                    }
+                });
+            }
+        });
+
+        logger.info("HTTP/2 mock service listening on {} (h2c) and {} (h2)", cleartextPort, tlsPort);
+    }
+
+    private void bind(int port, ChannelHandler initializer) {
+        new ServerBootstrap()
+                .group(boss, workers)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childHandler(initializer)
+                .bind(port)
+                .syncUninterruptibly();
+    }
+
+    private void track(SocketChannel ch) {
+        stats.connectionOpened();
+        ch.closeFuture().addListener(f -> stats.connectionClosed());
+    }
+
+    // Turns HTTP/2 frames into FullHttpRequests, and FullHttpResponses back into frames.
+    private static HttpToHttp2ConnectionHandler http2Handler() {
+        Http2Connection connection = new DefaultHttp2Connection(true);
+        return new HttpToHttp2ConnectionHandlerBuilder()
+                .connection(connection)
+                .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                        .maxContentLength(MAX_CONTENT_LENGTH)
+                        .propagateSettings(false)
+                        .validateHttpHeaders(false)
+                        .build())
+                .build();
+    }
+
+    private static SslContext mkSslContext() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream in = Http2MockService.class.getClassLoader().getResourceAsStream("keystore")) {
+            keyStore.load(in, "password".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, "password".toCharArray());
+
+        return SslContextBuilder.forServer(keyManagerFactory)
+                .sslProvider(SslProvider.JDK)
+                .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                .applicationProtocolConfig(new ApplicationProtocolConfig(
+                        ApplicationProtocolConfig.Protocol.ALPN,
+                        ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                        ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                        ApplicationProtocolNames.HTTP_2,
+                        ApplicationProtocolNames.HTTP_1_1))
+                .build();
+    }
+
+    @Override
+    public void close() {
+        boss.shutdownGracefully();
+        workers.shutdownGracefully();
+    }
+}
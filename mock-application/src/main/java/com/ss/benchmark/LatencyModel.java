@@ -0,0 +1,177 @@
+package com.ss.benchmark;
+
+import com.github.tomakehurst.wiremock.http.DelayDistribution;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How long a stub waits before it answers, from a spec such as <code>-Dmock.delay.short=...</code>:
+ * <dl>
+ * <dt><code>none</code></dt><dd>answer right away (the default)</dd>
+ * <dt><code>fixed:MS</code></dt><dd>always <code>MS</code></dd>
+ * <dt><code>uniform:LOW,HIGH</code></dt><dd>anywhere between <code>LOW</code> and <code>HIGH</code></dd>
+ * <dt><code>lognormal:MEDIAN,SIGMA</code></dt><dd>a long right tail around <code>MEDIAN</code>;
+ * <code>SIGMA</code> 0.1 is tight, 1 is wide</dd>
+ * <dt><code>bimodal:FAST,SLOW,FRACTION</code></dt><dd><code>SLOW</code> for that fraction of
+ * requests, <code>FAST</code> for the rest.  <code>bimodal:1,500,0.01</code> is "1% take 500 ms".</dd>
+ * <dt><code>file:PATH</code></dt><dd>percentiles from a file: <code>PERCENTILE MS</code> lines
+ * (0-100), or an HdrHistogram <code>.hgrm</code> such as the harness writes with
+ * <code>bm.recorder=hdr</code>.  Samples are interpolated between the points.</dd>
+ * </dl>
+ * All times are in milliseconds.  It doubles as WireMock's {@link DelayDistribution}; the Netty
+ * mocks schedule the response on the channel's event loop.
+ */
+public abstract class LatencyModel implements DelayDistribution {
+
+    public static final LatencyModel NONE = new LatencyModel("none") {
+        @Override
+        public long sampleMillis() {
+            return 0;
+        }
+    };
+
+    private final String spec;
+
+    private LatencyModel(String spec) {
+        this.spec = spec;
+    }
+
+    public static LatencyModel parse(String spec) {
+        String s = spec.trim();
+        int colon = s.indexOf(':');
+        String kind = colon < 0 ? s : s.substring(0, colon);
+        String args = colon < 0 ? "" : s.substring(colon + 1);
+        switch (kind) {
+            case "none":
+                return NONE;
+            case "fixed":
+                return fixed(s, millis(args, 1)[0]);
+            case "uniform":
+                return uniform(s, millis(args, 2));
+            case "lognormal":
+                return lognormal(s, millis(args, 2));
+            case "bimodal":
+                return bimodal(s, millis(args, 3));
+            case "file":
+                return percentiles(s, args);
+            default:
+                throw new IllegalArgumentException("Unknown delay model " + spec
+                        + ", expected none, fixed, uniform, lognormal, bimodal or file");
+        }
+    }
+
+    public boolean isNone() {
+        return this == NONE;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+    private static double[] millis(String args, int count) {
+        String[] parts = args.split(",");
+        Validate.isTrue(parts.length == count && !args.isEmpty(), "Expected %d values, got '%s'", count, args);
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+            Validate.isTrue(values[i] >= 0, "Negative value in '%s'", args);
+        }
+        return values;
+    }
+
+    private static LatencyModel fixed(String spec, double ms) {
+        long delay = Math.round(ms);
+        return new LatencyModel(spec) {
+            @Override
+            public long sampleMillis() {
+                return delay;
+            }
+        };
+    }
+
+    private static LatencyModel uniform(String spec, double[] args) {
+        double low = args[0];
+        double high = args[1];
+        Validate.isTrue(low <= high, "uniform: low is above high");
+        return new LatencyModel(spec) {
+            @Override
+            public long sampleMillis() {
+                return Math.round(low + ThreadLocalRandom.current().nextDouble() * (high - low));
+            }
+        };
+    }
+
+    private static LatencyModel lognormal(String spec, double[] args) {
+        double median = args[0];
+        double sigma = args[1];
+        return new LatencyModel(spec) {
+            @Override
+            public long sampleMillis() {
+                return Math.round(median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+            }
+        };
+    }
+
+    private static LatencyModel bimodal(String spec, double[] args) {
+        long fast = Math.round(args[0]);
+        long slow = Math.round(args[1]);
+        double fraction = args[2];
+        Validate.isTrue(fraction <= 1, "bimodal: the slow fraction is above 1");
+        return new LatencyModel(spec) {
+            @Override
+            public long sampleMillis() {
+                return ThreadLocalRandom.current().nextDouble() < fraction ? slow : fast;
+            }
+        };
+    }
+
+    private static LatencyModel percentiles(String spec, String path) {
+        // ascending percentile (0-100) -> millis
+        List<double[]> points = new ArrayList<>();
+        boolean hgrm = path.endsWith(".hgrm");
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read delay percentiles from " + path, e);
+        }
+        for (String line : lines) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length < 2 || !Character.isDigit(columns[0].charAt(0))) {
+                continue; // headers, comments, the .hgrm summary
+            }
+            double ms = Double.parseDouble(columns[hgrm ? 0 : 1]);
+            double percentile = hgrm ? Double.parseDouble(columns[1]) * 100 : Double.parseDouble(columns[0]);
+            if (points.isEmpty() || percentile > points.get(points.size() - 1)[0]) {
+                points.add(new double[]{percentile, ms});
+            }
+        }
+        Validate.isTrue(!points.isEmpty(), "No percentiles in %s", path);
+        double[][] table = points.toArray(new double[0][]);
+
+        return new LatencyModel(spec) {
+            @Override
+            public long sampleMillis() {
+                double p = ThreadLocalRandom.current().nextDouble() * table[table.length - 1][0];
+                int i = 0;
+                while (table[i][0] < p) {
+                    i++;
+                }
+                if (i == 0) {
+                    return Math.round(table[0][1]);
+                }
+                double[] lo = table[i - 1];
+                double[] hi = table[i];
+                return Math.round(lo[1] + (hi[1] - lo[1]) * (p - lo[0]) / (hi[0] - lo[0]));
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.ss.benchmark;
+
+import com.ss.benchmark.httpclient.common.Payloads;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the same stubs as {@link MockService} (<code>/bytes/{size}</code> included), plus
+ * <code>/stats</code>.  Requests arrive as {@link FullHttpRequest}s whether the connection speaks
+ * HTTP/1.1 or HTTP/2 (see {@link Http2MockService}); for HTTP/2 the stream id travels in an
+ * extension header, which has to be copied onto the response.
+ * <p></p>
+ * Delayed responses (see {@link LatencyModel}) are scheduled on the channel's event loop.  HTTP/2
+ * streams are answered whenever they're due; HTTP/1.1 responses never overtake earlier ones.
+ */
+class MockHttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MockHttpHandler.class);
+
+    private static final Map<String, byte[]> STUBS = new HashMap<>();
+
+    static {
+        STUBS.put("/short", Payloads.SHORT.getBytes(StandardCharsets.UTF_8));
+        STUBS.put("/long", Payloads.LONG.getBytes(StandardCharsets.UTF_8));
+        STUBS.put("/hello", Payloads.HELLO.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final String STREAM_ID = HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text().toString();
+
+    private final ConnectionStats stats;
+    private final Map<String, LatencyModel> delays;
+    // when the last delayed HTTP/1.1 response goes out
+    private long lastDue = System.nanoTime();
+
+    MockHttpHandler(ConnectionStats stats, Map<String, LatencyModel> delays) {
+        this.stats = stats;
+        this.delays = delays;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        respond(ctx, request);
+    }
+
+    // h2c via "Upgrade: h2c": the request that asked for the upgrade is answered on stream 1.
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent) {
+            FullHttpRequest request = ((HttpServerUpgradeHandler.UpgradeEvent) evt).upgradeRequest();
+            request.headers().setInt(STREAM_ID, 1);
+            respond(ctx, request);
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    private void respond(ChannelHandlerContext ctx, FullHttpRequest request) {
+        stats.request();
+
+        String path = new QueryStringDecoder(request.uri()).path();
+        FullHttpResponse response;
+        if ("/stats".equals(path)) {
+            response = ok(Unpooled.copiedBuffer(stats.render(), StandardCharsets.UTF_8));
+        } else if (STUBS.containsKey(path)) {
+            response = ok(Unpooled.wrappedBuffer(STUBS.get(path)));
+        } else if (MockService.payloadSize(path) >= 0) {
+            response = ok(Unpooled.wrappedBuffer(Payloads.bytes(MockService.payloadSize(path))));
+        } else {
+            response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND, Unpooled.EMPTY_BUFFER);
+        }
+        response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+
+        String streamId = request.headers().get(STREAM_ID);
+        if (streamId != null) {
+            response.headers().set(STREAM_ID, streamId);
+        }
+
+        LatencyModel delay = delays.get(path);
+        if (delays.isEmpty() || (delay == null && streamId != null)) {
+            ctx.writeAndFlush(response);
+            return;
+        }
+        long now = System.nanoTime();
+        long due = now + TimeUnit.MILLISECONDS.toNanos(delay == null ? 0 : delay.sampleMillis());
+        if (streamId == null) {
+            due = due - lastDue < 0 ? lastDue : due;
+            lastDue = due;
+        }
+        ctx.executor().schedule(() -> ctx.writeAndFlush(response), due - now, TimeUnit.NANOSECONDS);
+    }
+
+    private static FullHttpResponse ok(ByteBuf body) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, body);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+        return response;
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.debug("Closing connection", cause);
+        ctx.close();
+    }
+}
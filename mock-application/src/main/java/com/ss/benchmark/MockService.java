@@ -1,13 +1,19 @@
 package com.ss.benchmark;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.ss.benchmark.httpclient.common.ByteSizes;
 import com.ss.benchmark.httpclient.common.Payloads;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 
@@ -22,12 +28,26 @@ public class MockService {
 
     private static String HTTP_PORT_DEFAULT = "8080";
     private static String HTTPS_PORT_DEFUALT = "9443";
+    private static String H2C_PORT_DEFAULT = "8082";
+    private static String H2_PORT_DEFAULT = "9444";
+    private static String SERVER_DEFAULT = "wiremock";
+    private static String[] STUBS = {"/short", "/long", "/hello"};
+    private static String PAYLOAD_PATH = "/bytes/";
+    // Anything bigger is for /stream (see NettyMockService).
+    static final int MAX_PAYLOAD = 64 * 1024 * 1024;
 
     public MockService(){
         this("8080", "9443");
     }
 
     public MockService(String http_port, String https_port){
+        this(http_port, https_port, Collections.emptyMap());
+    }
+
+    /**
+     * @param delays stub path to how long it takes to answer; paths that aren't there answer right away
+     */
+    public MockService(String http_port, String https_port, Map<String, LatencyModel> delays){
 
         Validate.isTrue(NumberUtils.isDigits(http_port), "Invalid value for http.port");
         Validate.isTrue(NumberUtils.isDigits(https_port), "Invalid value for https.port");
@@ -44,13 +64,19 @@ public class MockService {
                 .disableRequestJournal()
                 .containerThreads(200)
                 .jettyAcceptQueueSize(10)
-                .jettyAcceptors(cpus);
+                .jettyAcceptors(cpus)
+                .extensions(new PayloadTransformer());
+        if (!delays.isEmpty()) {
+            // Delayed responses go to a scheduler rather than sleeping on a container thread.
+            config.asynchronousResponseEnabled(true)
+                    .asynchronousResponseThreads(cpus);
+        }
 
         wireMockServer = new WireMockServer(config);
         wireMockServer.start();
 
         //configure the basic stubs
-        createEchoStubs();
+        createEchoStubs(delays);
         logger.info("Completion of stubs generation");
     }
 
@@ -58,18 +84,60 @@ public class MockService {
         wireMockServer.stop();
     }
 
-    private void createEchoStubs(){
+    private void createEchoStubs(Map<String, LatencyModel> delays){
 
         wireMockServer.stubFor(any(urlPathEqualTo("/long"))
-                .willReturn(aResponse().withStatus(200).withBody(Payloads.LONG)));
+                .willReturn(delayed(aResponse().withStatus(200).withBody(Payloads.LONG), delays.get("/long"))));
 
         wireMockServer.stubFor(any(urlPathEqualTo("/short"))
-                .willReturn(aResponse().withStatus(200).withBody(Payloads.SHORT)));
+                .willReturn(delayed(aResponse().withStatus(200).withBody(Payloads.SHORT), delays.get("/short"))));
 
         wireMockServer.stubFor(
                       get(urlMatching("/hello"))
-                      .willReturn(aResponse().withStatus(200).withBody(Payloads.HELLO)));
+                      .willReturn(delayed(aResponse().withStatus(200).withBody(Payloads.HELLO), delays.get("/hello"))));
+
+        wireMockServer.stubFor(any(urlPathMatching(PAYLOAD_PATH + ".+"))
+                .willReturn(aResponse().withStatus(200).withTransformers(PayloadTransformer.NAME)));
+
+    }
+
+    /**
+     * How many bytes a <code>/bytes/{size}</code> URL asks for (e.g. <code>/bytes/4k</code>, see
+     * {@link ByteSizes}), or -1 if it's not one or asks for more than {@link #MAX_PAYLOAD}.
+     */
+    static int payloadSize(String uri){
+        int query = uri.indexOf('?');
+        String path = query < 0 ? uri : uri.substring(0, query);
+        if (!path.startsWith(PAYLOAD_PATH)) {
+            return -1;
+        }
+        try {
+            long size = ByteSizes.parse(path.substring(PAYLOAD_PATH.length()));
+            return size <= MAX_PAYLOAD ? (int) size : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static ResponseDefinitionBuilder delayed(ResponseDefinitionBuilder response, LatencyModel delay){
+        return delay == null ? response : response.withRandomDelay(delay);
+    }
 
+    /**
+     * <code>mock.delay.short</code>, <code>mock.delay.long</code> and <code>mock.delay.hello</code>,
+     * falling back to <code>mock.delay</code>.  See {@link LatencyModel} for the specs.
+     */
+    static Map<String, LatencyModel> delays(){
+        String fallback = getProperty("mock.delay", "none");
+        Map<String, LatencyModel> delays = new HashMap<>();
+        for (String stub : STUBS) {
+            LatencyModel delay = LatencyModel.parse(getProperty("mock.delay." + stub.substring(1), fallback));
+            if (!delay.isNone()) {
+                logger.info("Delaying {} by {}", stub, delay);
+                delays.put(stub, delay);
+            }
+        }
+        return delays;
     }
 
     private static String getProperty(String name, String defaultValue){
@@ -88,10 +156,33 @@ public class MockService {
 
         String http_port = getProperty("http.port" , HTTP_PORT_DEFAULT);
         String https_port = getProperty("https.port", HTTPS_PORT_DEFUALT);
-        new MockService(http_port, https_port);
+        Map<String, LatencyModel> delays = delays();
+        String server = getProperty("mock.server", SERVER_DEFAULT);
+        Validate.isTrue("wiremock".equals(server) || "netty".equals(server),
+                "Invalid value for mock.server, expected wiremock or netty");
+        if ("netty".equals(server)) {
+            // No TLS, no stub matching; just the stubs, as fast as the box allows.
+            Validate.isTrue(NumberUtils.isDigits(http_port), "Invalid value for http.port");
+            new NettyMockService(Integer.parseInt(http_port), delays, getProperty("mock.stream.file", null));
+        } else {
+            new MockService(http_port, https_port, delays);
+        }
+
+        // Same stubs, over HTTP/2 (and HTTP/1.1) on Netty, if asked for.
+        if (Boolean.parseBoolean(getProperty("mock.h2", "false"))) {
+            startHttp2(delays);
+        }
 
         logger.info("Successfully started the mock service.");
     }
 
+    private static void startHttp2(Map<String, LatencyModel> delays){
+        String h2c_port = getProperty("h2c.port", H2C_PORT_DEFAULT);
+        String h2_port = getProperty("h2.port", H2_PORT_DEFAULT);
+        Validate.isTrue(NumberUtils.isDigits(h2c_port), "Invalid value for h2c.port");
+        Validate.isTrue(NumberUtils.isDigits(h2_port), "Invalid value for h2.port");
+        new Http2MockService(Integer.parseInt(h2c_port), Integer.parseInt(h2_port), delays);
+    }
+
 
 }
@@ -0,0 +1,359 @@
+package com.ss.benchmark;
+
+import com.ss.benchmark.httpclient.common.ByteSizes;
+import com.ss.benchmark.httpclient.common.Payloads;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bare-bones HTTP/1.1 mock, for when WireMock is what limits the throughput
+ * (<code>-Dmock.server=netty</code>).  There's no stub matching: the path picks one of a few
+ * responses that were encoded up front - status line, headers and body - into direct buffers
+ * that every connection shares.  Request bodies are read and thrown away, and responses are
+ * flushed once per read, so pipelined requests go out together.  A delayed response (see
+ * {@link LatencyModel}) is scheduled on the connection's event loop, never after a later one.
+ * <p></p>
+ * Serves <code>/short</code>, <code>/long</code>, <code>/hello</code>, <code>/bytes/{size}</code>
+ * and <code>/stats</code> (see {@link ConnectionStats}); anything else is a 404.
+ * <p></p>
+ * <code>/stream/{size}</code> (e.g. <code>/stream/4g</code>, see {@link ByteSizes}) answers with
+ * that many bytes, chunked.  The body is one block sent over and over: a memory-mapped file
+ * (<code>-Dmock.stream.file</code>, up to 2 GB of it) or 1 MB of generated bytes.  Chunks are
+ * slices of the block, so nothing is copied on the way to the socket, and they're written only
+ * while the connection is writable, so a slow reader holds up the stream rather than filling the
+ * heap.  No other request on the connection is read until the stream is done, and any that were
+ * already read, pipelined behind it, wait until its last chunk has been written.
+ */
+public class NettyMockService implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyMockService.class);
+
+    private static final ByteBuf CONTINUE = preEncoded("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+    private static final ByteBuf NOT_FOUND = preEncoded(encode("404 Not Found", new byte[0]));
+    private static final Map<String, ByteBuf> RESPONSES = new HashMap<>();
+    // /bytes/{size}, encoded the first time each size is asked for
+    private static final Map<Integer, ByteBuf> PAYLOADS = new ConcurrentHashMap<>();
+
+    private static final String STREAM_PATH = "/stream/";
+    private static final int STREAM_CHUNK = 256 * 1024;
+    private static final int GENERATED_BLOCK = 1024 * 1024;
+    private static final ByteBuf STREAM_HEAD = preEncoded(("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "Transfer-Encoding: chunked\r\n"
+            + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    private static final ByteBuf CRLF = preEncoded("\r\n".getBytes(StandardCharsets.US_ASCII));
+    private static final ByteBuf LAST_CHUNK = preEncoded("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+    static {
+        RESPONSES.put("/short", preEncoded(encode("200 OK", Payloads.SHORT.getBytes(StandardCharsets.UTF_8))));
+        RESPONSES.put("/long", preEncoded(encode("200 OK", Payloads.LONG.getBytes(StandardCharsets.UTF_8))));
+        RESPONSES.put("/hello", preEncoded(encode("200 OK", Payloads.HELLO.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private final ConnectionStats stats = new ConnectionStats();
+    private final Map<String, LatencyModel> delays;
+    private final ByteBuf streamBlock;
+    private final EventLoopGroup boss = new NioEventLoopGroup(1);
+    private final EventLoopGroup workers = new NioEventLoopGroup();
+
+    /**
+     * @param delays stub path to how long it takes to answer; paths that aren't there answer right away
+     * @param streamFile what <code>/stream/{size}</code> sends, or null to send generated bytes
+     */
+    public NettyMockService(int port, Map<String, LatencyModel> delays, String streamFile) {
+        this.delays = delays;
+        this.streamBlock = streamFile == null ? generatedBlock() : mappedBlock(streamFile);
+        new ServerBootstrap()
+                .group(boss, workers)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                // The streamed chunks are slices of streamBlock, so queueing a few costs nothing.
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(2 * STREAM_CHUNK, 8 * STREAM_CHUNK))
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        stats.connectionOpened();
+                        ch.closeFuture().addListener(f -> stats.connectionClosed());
+                        ch.pipeline().addLast(new HttpRequestDecoder(), new Handler());
+                    }
+                })
+                .bind(port)
+                .syncUninterruptibly();
+
+        logger.info("Netty mock service listening on {}", port);
+    }
+
+    private static byte[] encode(String status, byte[] body) {
+        byte[] head = ("HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] all = new byte[head.length + body.length];
+        System.arraycopy(head, 0, all, 0, head.length);
+        System.arraycopy(body, 0, all, head.length, body.length);
+        return all;
+    }
+
+    // Never freed; each write gets its own duplicate so the indexes don't interfere.
+    private static ByteBuf preEncoded(byte[] bytes) {
+        return Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes)).asReadOnly();
+    }
+
+    private static ByteBuf generatedBlock() {
+        ByteBuf block = Unpooled.directBuffer(GENERATED_BLOCK);
+        for (int i = 0; i < GENERATED_BLOCK; i++) {
+            block.writeByte('a' + i % 26);
+        }
+        return Unpooled.unreleasableBuffer(block).asReadOnly();
+    }
+
+    // The mapping outlives the channel.
+    private static ByteBuf mappedBlock(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), Integer.MAX_VALUE);
+            Validate.isTrue(size > 0, "%s is empty", file);
+            logger.info("Streaming {} bytes of {}", size, file);
+            return Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size))).asReadOnly();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't map " + file, e);
+        }
+    }
+
+    private class Handler extends SimpleChannelInboundHandler<HttpObject> {
+
+        private ByteBuf pending;
+        private long pendingStream = -1;
+        private LatencyModel pendingDelay;
+        private boolean keepAlive;
+        private boolean unflushed;
+        // when the last delayed response goes out; HTTP/1.1 answers in order
+        private long lastDue = System.nanoTime();
+        // what's left of the /stream response being written
+        private long streamRemaining;
+        private int streamOffset;
+        private boolean streamKeepAlive;
+        private boolean streaming;
+        // requests that came in the same read as a /stream one, behind it
+        private final Queue<HttpObject> queued = new ArrayDeque<>();
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) {
+            if (streaming) {
+                queued.add(ReferenceCountUtil.retain(msg));
+                return;
+            }
+            handle(ctx, msg);
+        }
+
+        private void handle(ChannelHandlerContext ctx, HttpObject msg) {
+            if (msg.decoderResult().isFailure()) {
+                ctx.close();
+                return;
+            }
+            if (msg instanceof HttpRequest) {
+                HttpRequest request = (HttpRequest) msg;
+                stats.request();
+                keepAlive = HttpUtil.isKeepAlive(request);
+                String path = path(request.uri());
+                pendingStream = streamSize(path);
+                pending = pendingStream < 0 ? route(path) : null;
+                pendingDelay = delays.get(path);
+                if (HttpUtil.is100ContinueExpected(request)) {
+                    ctx.writeAndFlush(CONTINUE.duplicate());
+                }
+            }
+            if (msg instanceof LastHttpContent) {
+                if (pendingStream >= 0) {
+                    startStream(ctx, pendingStream, keepAlive);
+                    pendingStream = -1;
+                } else if (delays.isEmpty()) {
+                    respond(ctx, pending, keepAlive);
+                } else {
+                    respondLater(ctx, pending, keepAlive, pendingDelay);
+                }
+                pending = null;
+            }
+        }
+
+        private void respond(ChannelHandlerContext ctx, ByteBuf response, boolean keepAlive) {
+            if (keepAlive) {
+                ctx.write(response);
+                unflushed = true;
+            } else {
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        private void respondLater(ChannelHandlerContext ctx, ByteBuf response, boolean keepAlive, LatencyModel delay) {
+            long now = System.nanoTime();
+            long due = now + TimeUnit.MILLISECONDS.toNanos(delay == null ? 0 : delay.sampleMillis());
+            due = due - lastDue < 0 ? lastDue : due;
+            lastDue = due;
+            // Same deadline runs in submission order, so the responses can't overtake each other.
+            ctx.executor().schedule(() -> {
+                ChannelFuture written = ctx.writeAndFlush(response);
+                if (!keepAlive) {
+                    written.addListener(ChannelFutureListener.CLOSE);
+                }
+            }, due - now, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            if (unflushed) {
+                unflushed = false;
+                ctx.flush();
+            }
+        }
+
+        private void startStream(ChannelHandlerContext ctx, long size, boolean keepAlive) {
+            ctx.channel().config().setAutoRead(false);
+            streaming = true;
+            ctx.write(STREAM_HEAD.duplicate());
+            streamRemaining = size;
+            streamOffset = 0;
+            streamKeepAlive = keepAlive;
+            stream(ctx);
+        }
+
+        // Writes chunks until the outbound buffer is full; channelWritabilityChanged carries on.
+        private void stream(ChannelHandlerContext ctx) {
+            while (streamRemaining > 0 && ctx.channel().isWritable()) {
+                int n = (int) Math.min(Math.min(STREAM_CHUNK, streamRemaining), streamBlock.readableBytes() - streamOffset);
+                ByteBuf size = ctx.alloc().buffer(10);
+                size.writeCharSequence(Integer.toHexString(n) + "\r\n", StandardCharsets.US_ASCII);
+                ctx.write(size);
+                ctx.write(streamBlock.slice(streamOffset, n));
+                ctx.write(CRLF.duplicate());
+                streamRemaining -= n;
+                streamOffset = (streamOffset + n) % streamBlock.readableBytes();
+            }
+            if (streamRemaining > 0) {
+                ctx.flush();
+                return;
+            }
+            ChannelFuture written = ctx.writeAndFlush(LAST_CHUNK.duplicate());
+            unflushed = false;
+            streaming = false;
+            if (!streamKeepAlive) {
+                releaseQueued();
+                written.addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+            // Answer what was pipelined behind the stream, unless it's another stream.
+            while (!streaming && !queued.isEmpty()) {
+                HttpObject next = queued.poll();
+                try {
+                    handle(ctx, next);
+                } finally {
+                    ReferenceCountUtil.release(next);
+                }
+            }
+            if (unflushed) {
+                unflushed = false;
+                ctx.flush();
+            }
+            if (!streaming) {
+                ctx.channel().config().setAutoRead(true);
+            }
+        }
+
+        private void releaseQueued() {
+            HttpObject next;
+            while ((next = queued.poll()) != null) {
+                ReferenceCountUtil.release(next);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            releaseQueued();
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            if (streamRemaining > 0 && ctx.channel().isWritable()) {
+                stream(ctx);
+            }
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        // -1 unless it's a /stream/{size} request
+        private long streamSize(String path) {
+            if (!path.startsWith(STREAM_PATH)) {
+                return -1;
+            }
+            try {
+                return ByteSizes.parse(path.substring(STREAM_PATH.length()));
+            } catch (IllegalArgumentException e) {
+                return -1;
+            }
+        }
+
+        private String path(String uri) {
+            int query = uri.indexOf('?');
+            return query < 0 ? uri : uri.substring(0, query);
+        }
+
+        private ByteBuf route(String path) {
+            if ("/stats".equals(path)) {
+                return Unpooled.wrappedBuffer(encode("200 OK", stats.render().getBytes(StandardCharsets.UTF_8)));
+            }
+            int payloadSize = MockService.payloadSize(path);
+            if (payloadSize >= 0) {
+                return PAYLOADS.computeIfAbsent(payloadSize, size -> preEncoded(encode("200 OK", Payloads.bytes(size)))).duplicate();
+            }
+            ByteBuf response = RESPONSES.get(path);
+            return response == null ? NOT_FOUND.duplicate() : response.duplicate();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.debug("Closing connection", cause);
+            ctx.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        boss.shutdownGracefully();
+        workers.shutdownGracefully();
+    }
+}
@@ -0,0 +1,37 @@
+package com.ss.benchmark;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.ss.benchmark.httpclient.common.Payloads;
+
+/**
+ * Answers <code>/bytes/{size}</code> with that many bytes of {@link Payloads}.  A stub can't say
+ * "as many bytes as the URL asks for", so the body is filled in per request, from the cache.
+ */
+class PayloadTransformer extends ResponseDefinitionTransformer {
+
+    static final String NAME = "payload";
+
+    @Override
+    public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition, FileSource files, Parameters parameters) {
+        int size = MockService.payloadSize(request.getUrl());
+        if (size < 0) {
+            return ResponseDefinitionBuilder.like(responseDefinition).but().withStatus(404).build();
+        }
+        return ResponseDefinitionBuilder.like(responseDefinition).but().withBody(Payloads.bytes(size)).build();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean applyGlobally() {
+        return false;
+    }
+}
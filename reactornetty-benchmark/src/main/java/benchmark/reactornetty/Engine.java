@@ -1,31 +1,91 @@
 package benchmark.reactornetty;
 
 import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import com.ss.benchmark.httpclient.common.NettyOptions;
+import com.ss.benchmark.httpclient.common.PoolCounters;
+import com.ss.benchmark.httpclient.common.PoolStats;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.Epoll;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.internal.PlatformDependent;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.ByteBufFlux;
+import reactor.netty.Connection;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.channel.BootstrapHandlers;
 import reactor.netty.http.client.HttpClient;
 import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+import reactor.netty.tcp.TcpClient;
 
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 public class Engine implements HttpClientEngine {
     HttpClient client;
+    private final PoolCounters pool = new PoolCounters();
+    // our own event loops, if -Dbm.netty.transport or -Dbm.netty.threads was given
+    private LoopResources loops;
 
     @Override
     public void createClient(String host, int port) {
         String baseURL = url(host, port);
+        Function<TcpClient, TcpClient> netty = netty();
         client = reactor.netty.http.client.HttpClient
-                .create(ConnectionProvider.fixed("benchmark", MAX_CONNECTION_POOL_SIZE))
+                .create(new CountingConnectionProvider(ConnectionProvider.fixed("benchmark", MAX_CONNECTION_POOL_SIZE), pool))
                 .baseUrl(baseURL)
+                .observe((connection, state) -> {
+                    if (state == ConnectionObserver.State.RELEASED) {
+                        pool.released();
+                    }
+                })
                 .tcpConfiguration(tcpClient ->
-                        tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
-                                .doOnConnected(con -> con.addHandlerLast(new ReadTimeoutHandler(READ_TIMEOUT, TimeUnit.MILLISECONDS))));
+                        netty.apply(tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
+                                .doOnConnected(con -> con.addHandlerLast(new ReadTimeoutHandler(READ_TIMEOUT, TimeUnit.MILLISECONDS)))));
+    }
+
+    // reactor-netty already prefers epoll where it can load it (-Dreactor.netty.native).  The
+    // client applies its tcpConfiguration on every request, so the loops and allocator are made here.
+    private Function<TcpClient, TcpClient> netty() {
+        Function<TcpClient, TcpClient> netty = Function.identity();
+        if (NettyOptions.TRANSPORT != null || NettyOptions.THREADS > 0) {
+            boolean epoll = NettyOptions.TRANSPORT == null
+                    ? LoopResources.DEFAULT_NATIVE
+                    : NettyOptions.useEpoll("reactornetty", Epoll.isAvailable(), Epoll.unavailabilityCause());
+            loops = LoopResources.create("benchmark",
+                    NettyOptions.THREADS > 0 ? NettyOptions.THREADS : LoopResources.DEFAULT_IO_WORKER_COUNT, true);
+            netty = netty.andThen(tcpClient -> tcpClient.runOn(loops, epoll));
+        }
+        if (NettyOptions.customAllocator()) {
+            ByteBufAllocator allocator = allocator();
+            netty = netty.andThen(tcpClient -> tcpClient.option(ChannelOption.ALLOCATOR, allocator));
+        }
+        return netty;
+    }
+
+    private static ByteBufAllocator allocator() {
+        return NettyOptions.allocator(PlatformDependent.directBufferPreferred(),
+                PooledByteBufAllocator::new, UnpooledByteBufAllocator::new);
+    }
+
+    @Override
+    public void close() {
+        if (loops != null) {
+            loops.dispose();
+        }
     }
 
     @Override
@@ -37,7 +97,7 @@ public class Engine implements HttpClientEngine {
         return requestSender
                 .responseSingle((res, body) -> {
                     if (res.status().code() != 200) {
-                        Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
+                        return Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
                     }
                     return body;
                 })
@@ -56,7 +116,7 @@ public class Engine implements HttpClientEngine {
                 .send(ByteBufFlux.fromString(Flux.just(body)))
                 .responseSingle((res, responseBody) -> {
                     if (res.status().code() != 200) {
-                        Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
+                        return Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
                     }
                     return responseBody;
                 })
@@ -76,7 +136,7 @@ public class Engine implements HttpClientEngine {
         requestSender
                 .responseSingle((res, body) -> {
                     if (res.status().code() != 200) {
-                        Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
+                        return Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
                     }
                     return body;
                 })
@@ -101,7 +161,7 @@ public class Engine implements HttpClientEngine {
         requestSender
                 .responseSingle((res, resBody) -> {
                     if (res.status().code() != 200) {
-                        Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
+                        return Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
                     }
                     return resBody;
                 })
@@ -114,4 +174,122 @@ public class Engine implements HttpClientEngine {
         return cfResponse;
     }
 
+    @Override
+    public ByteBuffer blockingGETBytes(String path) {
+        return getBytes(path).block();
+    }
+
+    @Override
+    public ByteBuffer blockingPOSTBytes(String path, String body) {
+        return postBytes(path, body).block();
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingGETBytes(String path) {
+        return getBytes(path).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingPOSTBytes(String path, String body) {
+        return postBytes(path, body).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> nonblockingStreamGET(String path) {
+        return client
+                .request(HttpMethod.GET)
+                .uri(path)
+                .response((res, body) -> {
+                    if (res.status().code() != 200) {
+                        return Mono.<Integer>error(new IllegalStateException("Unexpected response code : " + res.status().code()));
+                    }
+                    // reactor-netty releases each chunk once we've counted it
+                    return body.map(ByteBuf::readableBytes);
+                })
+                .reduce(0L, (total, chunk) -> total + chunk)
+                .toFuture();
+    }
+
+    private Mono<ByteBuffer> getBytes(String path) {
+        return client
+                .request(HttpMethod.GET)
+                .uri(path)
+                .responseSingle((res, body) -> {
+                    if (res.status().code() != 200) {
+                        return Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
+                    }
+                    return body;
+                })
+                .map(Engine::copy);
+    }
+
+    private Mono<ByteBuffer> postBytes(String path, String body) {
+        return client
+                .headers(entries -> entries.add("Content-Type", "application/json" ))
+                .post()
+                .uri(path)
+                .send(ByteBufFlux.fromString(Flux.just(body)))
+                .responseSingle((res, responseBody) -> {
+                    if (res.status().code() != 200) {
+                        return Mono.error(new IllegalStateException("Unexpected response code : " + res.status().code()));
+                    }
+                    return responseBody;
+                })
+                .map(Engine::copy);
+    }
+
+    @Override
+    public PoolStats poolStats() {
+        return pool.snapshot();
+    }
+
+    // reactor-netty 0.8 keeps no pool metrics, so we count acquires and new channels on their
+    // way through the provider; releases come back through the client's observer.
+    private static class CountingConnectionProvider implements ConnectionProvider {
+        private final ConnectionProvider delegate;
+        private final PoolCounters pool;
+        // Only runs when the pool opens a new channel.  The pool is picked by the bootstrap's
+        // handlers, so this has to be the same instance every time or each request gets a new pool.
+        private final BiConsumer<ConnectionObserver, Channel> countChannel;
+
+        CountingConnectionProvider(ConnectionProvider delegate, PoolCounters pool) {
+            this.delegate = delegate;
+            this.pool = pool;
+            this.countChannel = (observer, channel) -> {
+                pool.connectionCreated();
+                channel.closeFuture().addListener(future -> pool.connectionClosed());
+            };
+        }
+
+        @Override
+        public Mono<? extends Connection> acquire(Bootstrap bootstrap) {
+            BootstrapHandlers.updateConfiguration(bootstrap, "benchmark.poolCounters", countChannel);
+            return Mono.defer(() -> {
+                pool.acquireStarted();
+                return delegate.acquire(bootstrap)
+                        .doOnSuccess(connection -> pool.acquired())
+                        .doOnError(t -> pool.acquireFailed())
+                        .doOnCancel(pool::acquireFailed);
+            });
+        }
+
+        @Override
+        public void disposeWhen(SocketAddress address) {
+            delegate.disposeWhen(address);
+        }
+
+        @Override
+        public Mono<Void> disposeLater() {
+            return delegate.disposeLater();
+        }
+    }
+
+    // The aggregated buffer is released once we return, so we take a plain copy of the bytes.
+    private static ByteBuffer copy(ByteBuf byteBuf) {
+        ByteBuffer bytes = ByteBuffer.allocate(byteBuf.readableBytes());
+        byteBuf.readBytes(bytes);
+        bytes.flip();
+        return bytes;
+    }
+
 }
@@ -20,8 +20,25 @@ object App {
 
   def main(args: Array[String]): Unit = {
 
+    if (args.headOption.contains("sweep")) {
+      Sweep.main(args.tail)
+      return
+    }
+    if (args.headOption.contains("netty")) {
+      NettyMatrix.main(args.tail)
+      return
+    }
+    if (args.headOption.contains("compare")) {
+      Compare.main(args.tail)
+      return
+    }
+    if (args.headOption.contains("net")) {
+      Net.main(args.tail)
+      return
+    }
+
     if (args.length != 1) {
-      System.err.println("Usage: <dir>")
+      System.err.println("Usage: <dir> | sweep <dir> [<fraction>] | netty <dir> | compare <baseline dir> <candidate dir> [<threshold>] | net <dir> [<harness client>]")
       System.exit(1)
     }
 
@@ -35,6 +52,7 @@ object App {
     val testCollateral = for {
       runDir                 <- dir.listFiles.toList
       f                      <- runDir.listFiles
+      if f.getName.endsWith(".csv")
       typ :: test :: revName = f.getName.split("""\.""").dropRight(1).reverse.toList
       fullPath               = revName.reverse
       name                   = fullPath.takeRight(2).head
@@ -61,35 +79,75 @@ object App {
          </head>
       """.stripMargin)
 
-    val errorRates =
-      testCollateral
-      .filter  { _.typ == "errorRate" }
-      .groupBy { _.method }
+    // errorRate and timing first, then whatever else was measured (e.g. allocationPerRequest)
+    def typOrder(typ: String): (Int, String) = typ match {
+      case "errorRate" => (0, typ)
+      case "timing"    => (1, typ)
+      case _           => (2, typ)
+    }
 
-    val timings: Map[String, List[TestCollateral]] =
-      testCollateral
-        .filter  { _.typ == "timing" }
-        .groupBy { _.method }
-
-    val sections: Seq[(String, List[List[TestCollateral]])] =
-      timings.toList.map { case (k, timingCollateral) =>
-        val collateralList =
-          errorRates.get(k)
-            .map { errorRateCollateral => List(errorRateCollateral, timingCollateral) }
-            .getOrElse(List(timingCollateral))
-        (k, collateralList)
+    // data-provided sizes (e.g. testPayloadAsyncGET-Size_4k), one table per test with a row per size
+    val sized = testCollateral.collect {
+      case tc @ TestCollateral(_, _, SizedMethod(test, size), _) => (test, size, tc)
+    }
+    sized
+      .groupBy { case (test, _, _) => test }
+      .toList
+      .sortBy { case (test, _) => test }
+      .foreach { case (test, rows) =>
+        println(s"<h1>$test by size</h1>")
+        println(sizeTable(rows.map { case (_, size, tc) => (size, tc) }))
+      }
+
+    // in-flight windows (e.g. testWindowedAsyncShortGET-Window_50), one table per test with a row per window
+    testCollateral
+      .collect { case tc @ TestCollateral(_, _, WindowedMethod(test, window), _) => (test, window, tc) }
+      .groupBy { case (test, _, _) => test }
+      .toList
+      .sortBy { case (test, _) => test }
+      .foreach { case (test, rows) =>
+        println(s"<h1>$test by window</h1>")
+        println(windowTable(rows.map { case (_, window, tc) => (window, tc) }))
       }
 
-    sections
+    testCollateral
+      .groupBy { _.method }
+      .toList
       .sortBy { case (method, _) => method }
-      .foreach { case (method, collateralLists) =>
+      .foreach { case (method, collateral) =>
         println(s"<h1>$method</h1>")
-        collateralLists.foreach { collateralList =>
-          collateralList.headOption.foreach { fst =>
-            println(s"<h3>${fst.typ}</h3>")
-          }
-          println(table(collateralList))
+        val (timeSeries, notTimeSeries) = collateral.partition { _.typ == TimeSeries.Typ }
+        val (soak, notSoak) = notTimeSeries.partition { _.typ == TimeSeries.SoakTyp }
+        val (trends, tables) = notSoak.partition { _.typ == TrendsTyp }
+        if (timeSeries.nonEmpty) {
+          println(TimeSeries.charts(chartFiles(timeSeries)))
+        }
+        if (soak.nonEmpty) {
+          println("<h3>soak</h3>")
+          println(TimeSeries.charts(chartFiles(soak), TimeSeries.SoakCharts))
+        }
+        if (trends.nonEmpty) {
+          println("<h3>trends</h3>")
+          println(trendsTable(trends))
         }
+        val (memory, notMemory) = tables.partition { tc => isMemory(tc.typ) }
+        val (cpu, others) = notMemory.partition { tc => CpuTyps.contains(tc.typ) }
+        if (memory.nonEmpty) {
+          println("<h3>memory</h3>")
+          println(gaugeTable(memory, MemoryTyps))
+        }
+        if (cpu.nonEmpty) {
+          println("<h3>cpu</h3>")
+          println(gaugeTable(cpu, CpuTyps))
+        }
+        others
+          .groupBy { _.typ }
+          .toList
+          .sortBy { case (typ, _) => typOrder(typ) }
+          .foreach { case (typ, collateralList) =>
+            println(s"<h3>$typ</h3>")
+            println(table(collateralList))
+          }
       }
 
     println("</html>")
@@ -111,6 +169,118 @@ object App {
 """.stripMargin
   }
 
+  // a label per run when a client ran more than once
+  private def chartFiles(collateral: List[TestCollateral]): List[(String, File)] =
+    collateral.groupBy { _.client }.toList.flatMap {
+      case (client, List(tc)) => List((client, tc.results))
+      case (client, tcs)      => tcs.sortBy { _.results.getParentFile.getName }.zipWithIndex.map { case (tc, i) => (s"$client #${i + 1}", tc.results) }
+    }
+
+  // the soak test's fitted trends, a row per client and column, as the harness formatted them; flagged ones in bold
+  private val TrendsTyp = "trends"
+
+  private def trendsTable(collateral: List[TestCollateral]): String = {
+    val rows = chartFiles(collateral).sortBy { _._1 }.flatMap { case (client, f) =>
+      val source = Source.fromFile(f)
+      try {
+        val lines = source.getLines.toList
+        val headers = lines.head.split(",", -1).toList
+        lines.tail.map { line => (client, headers.zip(line.split(",", -1)).toMap) }
+      } finally {
+        source.close()
+      }
+    }
+    val columns = List("column", "samples", "start", "end", "slope_per_hour", "change", "t")
+    s"""
+<table>
+  <th>Client</th>${columns.map { c => s"<th>$c</th>" }.mkString("")}
+    ${rows.map { case (client, row) =>
+      val (open, close) = if (row.get("flagged").contains("true")) ("<b>", "</b>") else ("", "")
+      s"<tr><td>$open$client$close</td>${columns.map { c => s"<td align=right>$open${row.getOrElse(c, "")}$close</td>" }.mkString("")}</tr>"
+    }.mkString("\n")}
+</table>
+""".stripMargin
+  }
+
+  // the harness's MemoryProbe gauges, plus the allocation rate
+  private val MemoryTyps = List(
+    "allocationBytesPerSecond", "gcCount", "gcMillis", "heapAfterGcBytes", "heapAfterGcChangeBytes", "directBytes", "directChangeBytes")
+  private val Collector = """(gcCount|gcMillis)(\w+)""".r
+
+  private def isMemory(typ: String): Boolean = MemoryTyps.contains(typ) || Collector.unapplySeq(typ).isDefined
+
+  // the harness's CpuProbe gauges
+  private val CpuTyps = List(
+    "requestsPerCpuSecond", "cpuCores", "contextSwitchesPerRequest", "voluntaryContextSwitchesPerRequest", "involuntaryContextSwitchesPerRequest")
+
+  // one gauge a column, a row per client; those in order first, then any others (e.g. each collector's)
+  private def gaugeTable(collateral: List[TestCollateral], order: List[String]): String = {
+    val typs = collateral.map { _.typ }.distinct.sortBy { typ =>
+      val i = order.indexOf(typ)
+      (if (i >= 0) i else order.size, typ)
+    }
+    val clients = collateral.map { _.client }.distinct.sorted
+    def cell(client: String, typ: String): String =
+      collateral.find { tc => tc.client == client && tc.typ == typ }.map { tc => tryFormat(lastRow(tc.results).getOrElse("value", "")) }.getOrElse("")
+    s"""
+<table>
+  <th>Client</th>${typs.map { t => s"<th>$t</th>" }.mkString("")}
+    ${clients.map { c =>
+      s"<tr><td>$c</td>${typs.map { t => s"<td align=right>${cell(c, t)}</td>" }.mkString("")}</tr>"
+    }.mkString("\n")}
+</table>
+""".stripMargin
+  }
+
+  val SizedMethod = """(.+)-Size_(\w+)""".r
+  val WindowedMethod = """(.+)-Window_(\d+)""".r
+
+  // 64, 4k, 16m, ... (powers of 1024, like the harness's ByteSizes)
+  private def bytes(size: String): Long = {
+    val units = "kmgt"
+    val unit = units.indexOf(size.last.toLower)
+    if (unit < 0) size.toLong else size.dropRight(1).toLong << (10 * (unit + 1))
+  }
+
+  // the CSV's last line, by column name
+  private def lastRow(f: File): Map[String, String] = {
+    val lines = Source.fromFile(f).getLines.toList
+    lines.head.split(",").zip(lines.last.split(",")).toMap
+  }
+
+  // latency and throughput per size (rows) and client (columns)
+  private def sizeTable(rows: List[(String, TestCollateral)]): String =
+    parameterTable("Size", rows, bytes,
+      List(("timing", "p50", "p50 ms"), ("timing", "p99", "p99 ms"), ("megabytesPerSecond", "value", "MB/s")))
+
+  // latency and throughput per window (rows) and client (columns)
+  private def windowTable(rows: List[(String, TestCollateral)]): String =
+    parameterTable("Window", rows, _.toLong,
+      List(("timing", "p50", "p50 ms"), ("timing", "p99", "p99 ms"), ("requestsPerSecond", "value", "req/s")))
+
+  // a row per parameter value, and for each client the (typ, CSV column, heading) columns
+  private def parameterTable(
+    name: String,
+    rows: List[(String, TestCollateral)],
+    order: String => Long,
+    columns: List[(String, String, String)]): String = {
+    val clients = rows.map { case (_, tc) => tc.client }.distinct.sorted
+    val sizes = rows.map { case (size, _) => size }.distinct.sortBy(order)
+    def cell(size: String, client: String, typ: String, column: String): String =
+      rows.collectFirst {
+        case (s, tc) if s == size && tc.client == client && tc.typ == typ => lastRow(tc.results).getOrElse(column, "")
+      }.map(tryFormat).getOrElse("")
+    s"""
+<table>
+  <tr><th rowspan=2>$name</th>${clients.map { c => s"<th colspan=${columns.size}>$c</th>" }.mkString("")}</tr>
+  <tr>${clients.flatMap { _ => columns.map { case (_, _, h) => s"<th>$h</th>" } }.mkString("")}</tr>
+    ${sizes.map { size =>
+      s"<tr><td>$size</td>${clients.flatMap { c => columns.map { case (typ, col, _) => s"<td align=right>${cell(size, c, typ, col)}</td>" } }.mkString("")}</tr>"
+    }.mkString("\n")}
+</table>
+""".stripMargin
+  }
+
   // best attempt at formatting values that _may_ be numbers.
   // Clearly, this impl is not worried about performance!
   private def tryFormat(maybeNum: String): String = {
@@ -0,0 +1,148 @@
+package benchmark.reporter
+
+import java.io.File
+
+import scala.util.Random
+
+/**
+  * Compares a candidate (e.g. a client upgrade) with a baseline, each run several times, and
+  * says which changes are real.
+  *
+  * For every client, test and metric in both, the change is the candidate's mean over the
+  * baseline's, minus one.  Its 95% confidence interval comes from bootstrapping: resampling
+  * each side's runs with replacement, many times.  A change is significant if the interval
+  * doesn't include 0, and a regression if it's significant, in the bad direction and at least
+  * the threshold.  One CSV row per comparison; exits 1 if there's any regression.
+  *
+  * Each directory holds one run directory per repetition, like metrics-csv.  Bootstrapping
+  * needs a few runs a side to mean anything; 5 or more is better.  With a single run on a
+  * side every resample is the same, so those comparisons get no interval and no verdict
+  * ("insufficient runs") and can't fail the comparison.  Machines drift, so alternate
+  * baseline and candidate runs rather than doing all of one and then the other.
+  */
+object Compare {
+
+  val DefaultThreshold = 0.05
+  val FewRuns = 5
+  // fewer than this on a side and there's nothing to resample
+  val MinRuns = 2
+  val Resamples = 10000
+  val Confidence = 0.95
+
+  // name, whether bigger is better, and how to get it from a run
+  case class Metric(name: String, higherIsBetter: Boolean, value: Sweep.Measured => Double)
+
+  val Metrics = List(
+    Metric("requests_per_second", higherIsBetter = true, _.requestsPerSecond),
+    Metric("p50_ms", higherIsBetter = false, _.p50),
+    Metric("p99_ms", higherIsBetter = false, _.p99),
+    Metric("bytes_per_request", higherIsBetter = false, _.bytesPerRequest))
+
+  case class Comparison(
+    client: String,
+    test: String,
+    metric: Metric,
+    baseline: Vector[Double],
+    candidate: Vector[Double],
+    change: Double,
+    low: Double,
+    high: Double,
+    threshold: Double) {
+
+    def enoughRuns: Boolean = baseline.size >= MinRuns && candidate.size >= MinRuns
+
+    def significant: Boolean = enoughRuns && (low > 0 || high < 0)
+
+    private def worse(d: Double) = if (metric.higherIsBetter) d < 0 else d > 0
+
+    def regression: Boolean = significant && worse(change) && math.abs(change) >= threshold
+    def improvement: Boolean = significant && !worse(change) && math.abs(change) >= threshold
+
+    def verdict: String =
+      if (!enoughRuns) "insufficient runs"
+      else if (regression) "regression"
+      else if (improvement) "improvement"
+      else "no change"
+  }
+
+  def main(args: Array[String]): Unit = {
+    val (baselineDir, candidateDir, threshold) = args.toList match {
+      case List(b, c)    => (new File(b), new File(c), DefaultThreshold)
+      case List(b, c, t) => (new File(b), new File(c), t.toDouble)
+      case _ =>
+        System.err.println("Usage: compare <baseline dir> <candidate dir> [<smallest change that counts, default 0.05>]")
+        sys.exit(1)
+    }
+    List(baselineDir, candidateDir).filterNot { _.isDirectory }.foreach { d =>
+      System.err.println(s"Expected ${d.getAbsolutePath} to be a directory.")
+      sys.exit(1)
+    }
+
+    val baseline = runs(baselineDir)
+    val candidate = runs(candidateDir)
+    // the same seed every time, so the same runs always give the same verdict
+    val random = new Random(42)
+
+    val comparisons = for {
+      key <- (baseline.keySet intersect candidate.keySet).toList.sorted
+      metric <- Metrics
+      b = baseline(key).map(metric.value).filterNot { _.isNaN }
+      c = candidate(key).map(metric.value).filterNot { _.isNaN }
+      if b.nonEmpty && c.nonEmpty && mean(b) != 0
+    } yield {
+      val (low, high) = if (b.size >= MinRuns && c.size >= MinRuns) interval(b, c, random) else (Double.NaN, Double.NaN)
+      Comparison(key._1, key._2, metric, b, c, change(b, c), low, high, threshold)
+    }
+
+    println("client,test,metric,baseline_runs,candidate_runs,baseline_mean,candidate_mean,change,ci_low,ci_high,verdict")
+    comparisons.foreach { r =>
+      println(List(
+        r.client, r.test, r.metric.name, r.baseline.size, r.candidate.size,
+        f"${mean(r.baseline)}%.3f", f"${mean(r.candidate)}%.3f",
+        f"${r.change}%.4f", bound(r.low), bound(r.high), r.verdict
+      ).mkString(","))
+    }
+
+    comparisons
+      .filter { r => r.baseline.size < FewRuns || r.candidate.size < FewRuns }
+      .map { r => (r.client, r.test, r.enoughRuns) }
+      .distinct
+      .foreach {
+        case (client, test, true) =>
+          System.err.println(s"warning: fewer than $FewRuns runs of $client $test on a side; the intervals will be too narrow")
+        case (client, test, false) =>
+          System.err.println(s"warning: fewer than $MinRuns runs of $client $test on a side; no verdict")
+      }
+    val regressions = comparisons.filter { _.regression }
+    comparisons.filter { r => r.regression || r.improvement }.foreach { r =>
+      System.err.println(f"${r.verdict}%-11s ${r.client} ${r.test} ${r.metric.name}: ${r.change * 100}%+.1f%% " +
+        f"(${r.low * 100}%+.1f%% to ${r.high * 100}%+.1f%%)")
+    }
+    System.err.println(s"${comparisons.size} comparisons, ${regressions.size} regressions")
+    if (regressions.nonEmpty) {
+      sys.exit(1)
+    }
+  }
+
+  // (client, test) -> one Measured per run
+  private def runs(dir: File): Map[(String, String), Vector[Sweep.Measured]] =
+    dir.listFiles.toVector
+      .filter { _.isDirectory }
+      .flatMap { Sweep.measured }
+      .groupBy { m => (m.client, m.test) }
+
+  private def mean(xs: Vector[Double]): Double = xs.sum / xs.size
+
+  // blank where there's no interval
+  private def bound(d: Double): String = if (d.isNaN) "" else f"$d%.4f"
+
+  private def change(b: Vector[Double], c: Vector[Double]): Double = mean(c) / mean(b) - 1
+
+  // the percentile interval of the bootstrapped changes
+  private def interval(b: Vector[Double], c: Vector[Double], random: Random): (Double, Double) = {
+    def resample(xs: Vector[Double]) = Vector.fill(xs.size)(xs(random.nextInt(xs.size)))
+    val changes = Array.fill(Resamples)(change(resample(b), resample(c))).filterNot { _.isNaN }.sorted
+    val tail = (1 - Confidence) / 2
+    (changes((tail * (changes.length - 1)).round.toInt), changes(((1 - tail) * (changes.length - 1)).round.toInt))
+  }
+}
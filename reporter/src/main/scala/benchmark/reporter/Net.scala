@@ -0,0 +1,72 @@
+package benchmark.reporter
+
+import java.io.File
+
+/**
+  * Takes the harness's own cost out of each engine's numbers: for every test, what the loopback
+  * engine (no I/O, so nothing but the harness) measured is subtracted from what each client did.
+  * One CSV row per client, test and metric: what was measured, the harness's share, and the
+  * difference.
+  *
+  * Subtracting percentiles is an approximation, good when the harness's cost is about the same
+  * for every request, which is what the loopback engine shows.  Runs of the same client are
+  * averaged.  The directory holds run directories, like metrics-csv, and should have loopback
+  * runs made with the same settings (bm.harness, executions, workers) as the others.
+  */
+object Net {
+
+  val DefaultHarness = "loopback"
+
+  case class Metric(name: String, value: Sweep.Measured => Double)
+
+  val Metrics = List(
+    Metric("p50_ms", _.p50),
+    Metric("p99_ms", _.p99),
+    Metric("cpu_us_per_request", _.cpuMicrosPerRequest),
+    Metric("bytes_per_request", _.bytesPerRequest))
+
+  def main(args: Array[String]): Unit = {
+    val (dir, harness) = args.toList match {
+      case List(d)    => (new File(d), DefaultHarness)
+      case List(d, h) => (new File(d), h)
+      case _ =>
+        System.err.println("Usage: net <dir> [<harness client, default loopback>]")
+        sys.exit(1)
+    }
+    if (!dir.isDirectory) {
+      System.err.println(s"Expected ${dir.getAbsolutePath} to be a directory.")
+      sys.exit(1)
+    }
+
+    val runs = dir.listFiles.toList
+      .filter { _.isDirectory }
+      .flatMap { Sweep.measured }
+      .groupBy { m => (m.client, m.test) }
+    val baseline = runs.collect { case ((`harness`, test), ms) => test -> ms }
+    if (baseline.isEmpty) {
+      System.err.println(s"No $harness runs in ${dir.getAbsolutePath}; run the $harness engine too.")
+      sys.exit(1)
+    }
+
+    println("client,test,metric,measured,harness,net")
+    runs.keys.toList.sorted.filterNot { case (client, _) => client == harness }.foreach { case (client, test) =>
+      baseline.get(test) match {
+        case None =>
+          System.err.println(s"warning: no $harness run of $test, so nothing to subtract from $client's")
+        case Some(harnessRuns) =>
+          Metrics.foreach { metric =>
+            val measured = mean(runs((client, test)).map(metric.value))
+            val cost = mean(harnessRuns.map(metric.value))
+            if (!measured.isNaN && !cost.isNaN) {
+              println(List(client, test, metric.name, f"$measured%.3f", f"$cost%.3f", f"${measured - cost}%.3f").mkString(","))
+            }
+          }
+      }
+    }
+  }
+
+  private def mean(xs: List[Double]): Double = {
+    val known = xs.filterNot { _.isNaN }
+    if (known.isEmpty) Double.NaN else known.sum / known.size
+  }
+}
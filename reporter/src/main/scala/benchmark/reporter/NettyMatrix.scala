@@ -0,0 +1,71 @@
+package benchmark.reporter
+
+import java.io.File
+
+/**
+  * Reads a Netty transport x allocator x buffers x threads matrix (see run.scala's netty) and writes
+  * one CSV row per combination, so they can be compared side by side.
+  *
+  * The directory holds <client>/<transport>-<allocator>-<buffers>-threads_<count>/<run>/ metrics directories.
+  */
+object NettyMatrix {
+
+  val Combination = """(\w+)-(\w+)-(\w+)-threads_(\d+)""".r
+
+  case class Result(
+    client: String,
+    transport: String,
+    allocator: String,
+    buffers: String,
+    threads: Int,
+    measured: Sweep.Measured)
+
+  def main(args: Array[String]): Unit = {
+    val dir = args.toList match {
+      case List(d) => new File(d)
+      case _ =>
+        System.err.println("Usage: netty <dir>")
+        sys.exit(1)
+    }
+    if (!dir.isDirectory) {
+      System.err.println(s"Expected ${dir.getAbsolutePath} to be a directory.")
+      sys.exit(1)
+    }
+
+    val results = for {
+      clientDir <- dir.listFiles.toList.filter { _.isDirectory }
+      comboDir  <- clientDir.listFiles.toList
+      (transport, allocator, buffers, threads) <- comboDir.getName match {
+        case Combination(t, a, b, n) => List((t, a, b, n.toInt))
+        case _                       => Nil
+      }
+      runDir    <- Sweep.latestRun(comboDir).toList
+      m         <- Sweep.measured(runDir)
+    } yield Result(clientDir.getName, transport, allocator, buffers, threads, m)
+
+    println("client,test,transport,allocator,buffers,threads,requests_per_second,p50_ms,p99_ms,errors,bytes_per_request,fraction_of_best")
+    results
+      .groupBy { r => (r.client, r.measured.test) }
+      .toList
+      .sortBy { case (key, _) => key }
+      .foreach { case ((client, test), combos) =>
+        val best = combos.map { _.measured.requestsPerSecond }.max
+        val ranked = combos.sortBy { -_.measured.requestsPerSecond }
+        ranked.foreach { r =>
+          val m = r.measured
+          println(List(
+            r.client, m.test, r.transport, r.allocator, r.buffers, r.threads,
+            f"${m.requestsPerSecond}%.1f", f"${m.p50}%.3f", f"${m.p99}%.3f", m.errors,
+            f"${m.bytesPerRequest}%.0f", f"${m.requestsPerSecond / best}%.3f"
+          ).mkString(","))
+        }
+
+        System.err.println(s"$client $test, fastest first:")
+        ranked.foreach { r =>
+          val m = r.measured
+          System.err.println(f"  ${r.transport}%-5s ${r.allocator}%-8s ${r.buffers}%-6s ${r.threads}%3d threads: " +
+            f"${m.requestsPerSecond}%8.0f req/s, p99 ${m.p99}%7.2f ms, ${m.bytesPerRequest}%8.0f B/req")
+        }
+      }
+  }
+}
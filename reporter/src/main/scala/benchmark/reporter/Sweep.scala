@@ -0,0 +1,132 @@
+package benchmark.reporter
+
+import java.io.File
+
+import scala.io.Source
+import scala.util.Try
+
+/**
+  * Reads a pool-size x workers sweep (see run.scala's sweep) and writes one CSV row per point,
+  * marking the knee: the smallest configuration within a fraction of the peak throughput.
+  *
+  * The directory holds <client>/pool_<size>-workers_<count>/<run>/ metrics directories.
+  */
+object Sweep {
+
+  val DefaultFraction = 0.9
+
+  val Point = """pool_(\d+)-workers_(\d+)""".r
+
+  case class Result(
+    client: String,
+    test: String,
+    pool: Int,
+    workers: Int,
+    requestsPerSecond: Double,
+    p50: Double,
+    p99: Double,
+    errors: Long)
+
+  // What one run measured for one test method.  The client is the test class's package.
+  case class Measured(
+    client: String,
+    test: String,
+    requestsPerSecond: Double,
+    p50: Double,
+    p99: Double,
+    errors: Long,
+    bytesPerRequest: Double,
+    cpuMicrosPerRequest: Double)
+
+  def main(args: Array[String]): Unit = {
+    val (dir, fraction) = args.toList match {
+      case List(d)    => (new File(d), DefaultFraction)
+      case List(d, f) => (new File(d), f.toDouble)
+      case _ =>
+        System.err.println("Usage: sweep <dir> [<fraction of peak, default 0.9>]")
+        sys.exit(1)
+    }
+    if (!dir.isDirectory) {
+      System.err.println(s"Expected ${dir.getAbsolutePath} to be a directory.")
+      sys.exit(1)
+    }
+
+    val results = for {
+      clientDir <- dir.listFiles.toList.filter { _.isDirectory }
+      pointDir  <- clientDir.listFiles.toList
+      (pool, workers) <- pointDir.getName match {
+        case Point(p, w) => List((p.toInt, w.toInt))
+        case _           => Nil
+      }
+      runDir    <- latestRun(pointDir).toList
+      m         <- measured(runDir)
+    } yield Result(clientDir.getName, m.test, pool, workers, m.requestsPerSecond, m.p50, m.p99, m.errors)
+
+    println("client,test,pool_size,workers,requests_per_second,p50_ms,p99_ms,errors,fraction_of_peak,knee_for_workers,knee")
+    results
+      .groupBy { r => (r.client, r.test) }
+      .toList
+      .sortBy { case (key, _) => key }
+      .foreach { case ((client, test), points) =>
+        val peak = points.map { _.requestsPerSecond }.max
+        val knee = smallest(points.filter { _.requestsPerSecond >= fraction * peak })
+        val kneeForWorkers = points.groupBy { _.workers }.map { case (w, ps) =>
+          val best = ps.map { _.requestsPerSecond }.max
+          w -> smallest(ps.filter { _.requestsPerSecond >= fraction * best })
+        }
+        points.sortBy { r => (r.workers, r.pool) }.foreach { r =>
+          println(List(
+            r.client, r.test, r.pool, r.workers,
+            f"${r.requestsPerSecond}%.1f", f"${r.p50}%.3f", f"${r.p99}%.3f", r.errors,
+            f"${r.requestsPerSecond / peak}%.3f", kneeForWorkers(r.workers) == r, knee == r
+          ).mkString(","))
+        }
+
+        System.err.println(f"$client $test: peak ${peak}%.0f req/s; within ${fraction * 100}%.0f%% of it:")
+        System.err.println(f"  knee      pool ${knee.pool}%4d, ${knee.workers}%4d workers: ${knee.requestsPerSecond}%.0f req/s, p99 ${knee.p99}%.2f ms")
+        kneeForWorkers.toList.sortBy { case (w, _) => w }.foreach { case (w, k) =>
+          System.err.println(f"  $w%4d workers: pool ${k.pool}%4d, ${k.requestsPerSecond}%.0f req/s, p99 ${k.p99}%.2f ms")
+        }
+      }
+  }
+
+  // fewest connections, then fewest callers
+  private def smallest(points: List[Result]): Result = points.minBy { r => (r.pool, r.workers) }
+
+  // A point that was run more than once counts its latest run.
+  def latestRun(pointDir: File): Option[File] =
+    Option(pointDir.listFiles).flatMap { _.filter { _.isDirectory }.sortBy { _.getName }.lastOption }
+
+  // Every method with a timing and a throughput in the run, except the warm-up.
+  def measured(runDir: File): List[Measured] = {
+    val files = runDir.listFiles.toList.filter { _.getName.endsWith(".csv") }
+    // a run is one engine: benchmark.<client>.PerformanceTests.<method>.<typ>.csv
+    val client = files.headOption.flatMap { _.getName.split("""\.""").dropRight(4).lastOption }.getOrElse("")
+    val metrics = files
+      .flatMap { f =>
+        f.getName.split("""\.""").dropRight(1).reverse.toList match {
+          case typ :: method :: _ => List((method, typ) -> lastRow(f))
+          case _                  => Nil
+        }
+      }
+      .toMap
+    metrics.keys.collect { case (method, "timing") if method != "testWarmupCache" => method }.toList.flatMap { method =>
+      def value(typ: String, column: String): Option[String] = metrics.get((method, typ)).flatMap { _.get(column) }
+      for {
+        rps <- value("requestsPerSecond", "value").flatMap { v => Try(v.toDouble).toOption }
+      } yield Measured(
+        client, method, rps,
+        value("timing", "p50").map { _.toDouble }.getOrElse(Double.NaN),
+        value("timing", "p99").map { _.toDouble }.getOrElse(Double.NaN),
+        value("errorRate", "count").map { _.toLong }.getOrElse(0L),
+        value("allocationPerRequest", "value").flatMap { v => Try(v.toDouble).toOption }.getOrElse(Double.NaN),
+        value("requestsPerCpuSecond", "value").flatMap { v => Try(1e6 / v.toDouble).toOption }.getOrElse(Double.NaN))
+    }
+  }
+
+  // the CSV's last line, by column name
+  private def lastRow(f: File): Map[String, String] = {
+    val lines = Source.fromFile(f).getLines.toList
+    lines.head.split(",").zip(lines.last.split(",")).toMap
+  }
+}
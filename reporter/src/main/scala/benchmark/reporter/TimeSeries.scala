@@ -0,0 +1,137 @@
+package benchmark.reporter
+
+import java.io.File
+
+import scala.io.Source
+import scala.util.Try
+
+/**
+  * Charts of a test method over time, from the harness's .timeseries.csv files: throughput and
+  * latency percentiles per interval, with a line per client.  Inline SVG, so the report stays a
+  * single HTML file.
+  *
+  * Throughput falling off, or p99 and max jumping, part way through a run is what to look for;
+  * the end-of-run tables average it away.
+  */
+object TimeSeries {
+
+  val Typ = "timeseries"
+
+  // column, chart title
+  val Charts = List(
+    ("requests_per_second", "requests/s"),
+    ("p50_ms", "p50 ms"),
+    ("p99_ms", "p99 ms"),
+    ("max_ms", "max ms"))
+
+  // the soak test's samples (see the harness's SoakMonitor), charted the same way
+  val SoakTyp = "soak"
+
+  val SoakCharts = List(
+    ("requests_per_second", "requests/s"),
+    ("p99_ms", "p99 ms"),
+    ("heap_after_gc_mb", "heap after GC MB"),
+    ("direct_mb", "direct MB"),
+    ("open_fds", "open files"),
+    ("threads", "threads"))
+
+  val Colors = Vector("#1f77b4", "#ff7f0e", "#2ca02c", "#d62728", "#9467bd", "#8c564b", "#e377c2", "#7f7f7f")
+
+  private val Width = 420
+  private val Height = 200
+  private val Left = 60
+  private val Right = 10
+  private val Top = 25
+  private val Bottom = 30
+  private val Ticks = 4
+
+  // a client's rows, as column -> (seconds, value); blank values (nothing finished) are gaps
+  case class Series(label: String, points: Map[String, Vector[(Double, Option[Double])]])
+
+  def read(label: String, f: File): Series = {
+    val source = Source.fromFile(f)
+    try {
+      val lines = source.getLines.toVector
+      val headers = lines.head.split(",", -1)
+      val rows = lines.tail.map { _.split(",", -1) }
+      val seconds = rows.map { r => r(headers.indexOf("seconds")).toDouble }
+      val points = headers.zipWithIndex.map { case (h, i) =>
+        h -> seconds.zip(rows.map { r => Try { r(i).toDouble }.toOption })
+      }.toMap
+      Series(label, points)
+    } finally {
+      source.close()
+    }
+  }
+
+  /**
+    * One chart per column, side by side; (label, file) per client.
+    */
+  def charts(files: List[(String, File)], columns: List[(String, String)] = Charts): String = {
+    val series = files.sortBy { _._1 }.map { case (label, f) => read(label, f) }
+    val charts = columns.map { case (column, title) => chart(title, column, series) }
+    s"<div>${charts.mkString("\n")}</div>\n${legend(series)}"
+  }
+
+  private def color(i: Int) = Colors(i % Colors.size)
+
+  private def legend(series: List[Series]): String =
+    series.zipWithIndex.map { case (s, i) =>
+      s"""<span style="color:${color(i)}">&#9632; ${s.label}</span>"""
+    }.mkString("<p>", " &nbsp; ", "</p>")
+
+  private def chart(title: String, column: String, series: List[Series]): String = {
+    val all = series.flatMap { _.points.getOrElse(column, Vector.empty) }
+    val xMax = niceCeiling(all.map { _._1 }.foldLeft(0.0)(math.max))
+    val yMax = niceCeiling(all.flatMap { _._2 }.foldLeft(0.0)(math.max))
+    val plotWidth = Width - Left - Right
+    val plotHeight = Height - Top - Bottom
+    def x(seconds: Double) = Left + seconds / xMax * plotWidth
+    def y(value: Double) = Top + plotHeight - value / yMax * plotHeight
+
+    val grid = (0 to Ticks).map { i =>
+      val v = yMax * i / Ticks
+      val t = xMax * i / Ticks
+      f"""<line x1="$Left" y1="${y(v)}%.1f" x2="${Width - Right}" y2="${y(v)}%.1f" stroke="#ddd"/>""" +
+        f"""<text x="${Left - 4}" y="${y(v) + 4}%.1f" text-anchor="end" font-size="10">${label(v)}</text>""" +
+        f"""<text x="${x(t)}%.1f" y="${Height - Bottom + 14}" text-anchor="middle" font-size="10">${label(t)}</text>"""
+    }
+    // a polyline per run of consecutive values, so gaps stay gaps
+    val lines = series.zipWithIndex.flatMap { case (s, i) =>
+      segments(s.points.getOrElse(column, Vector.empty)).map { segment =>
+        val points = segment.map { case (t, v) => f"${x(t)}%.1f,${y(v)}%.1f" }.mkString(" ")
+        if (segment.size == 1) {
+          f"""<circle cx="${x(segment.head._1)}%.1f" cy="${y(segment.head._2)}%.1f" r="2" fill="${color(i)}"/>"""
+        } else {
+          s"""<polyline points="$points" fill="none" stroke="${color(i)}" stroke-width="1.5"/>"""
+        }
+      }
+    }
+    s"""<svg width="$Width" height="$Height" xmlns="http://www.w3.org/2000/svg" style="margin-right:10px">
+       |<text x="${Width / 2}" y="15" text-anchor="middle" font-size="12">$title</text>
+       |${grid.mkString("\n")}
+       |<line x1="$Left" y1="${Top + plotHeight}" x2="${Width - Right}" y2="${Top + plotHeight}" stroke="black"/>
+       |<line x1="$Left" y1="$Top" x2="$Left" y2="${Top + plotHeight}" stroke="black"/>
+       |<text x="${Left + plotWidth / 2}" y="${Height - 3}" text-anchor="middle" font-size="10">seconds</text>
+       |${lines.mkString("\n")}
+       |</svg>""".stripMargin
+  }
+
+  private def segments(points: Vector[(Double, Option[Double])]): List[Vector[(Double, Double)]] =
+    points.foldLeft(List(Vector.empty[(Double, Double)])) {
+      case (current :: done, (t, Some(v))) => (current :+ ((t, v))) :: done
+      case (current :: done, (_, None))    => if (current.isEmpty) current :: done else Vector.empty :: current :: done
+      case (Nil, _)                        => Nil
+    }.filter { _.nonEmpty }.reverse
+
+  // 1, 2 or 5 times a power of 10, at least v
+  private def niceCeiling(v: Double): Double =
+    if (v <= 0) 1
+    else {
+      val magnitude = math.pow(10, math.floor(math.log10(v)))
+      List(1.0, 2.0, 5.0, 10.0).map { _ * magnitude }.find { _ >= v }.get
+    }
+
+  private def label(v: Double): String =
+    if (v >= 1000 || v == math.rint(v)) f"$v%.0f" else if (v >= 1) f"$v%.1f" else f"$v%.2f"
+}
@@ -1,30 +1,105 @@
 package benchmark.rxnetty;
 
 import com.ss.benchmark.httpclient.common.HttpClientEngine;
+import com.ss.benchmark.httpclient.common.NettyOptions;
+import com.ss.benchmark.httpclient.common.PoolCounters;
+import com.ss.benchmark.httpclient.common.PoolStats;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.Epoll;
+import io.netty.util.internal.PlatformDependent;
+import io.reactivex.netty.RxNetty;
 import io.reactivex.netty.client.Host;
 import io.reactivex.netty.client.pool.PoolConfig;
 import io.reactivex.netty.client.pool.SingleHostPoolingProviderFactory;
 import io.reactivex.netty.protocol.http.client.HttpClient;
 import io.reactivex.netty.protocol.http.client.HttpClientResponse;
+import io.reactivex.netty.protocol.http.client.events.HttpClientEventsListener;
+import io.reactivex.netty.threads.SingleNioLoopProvider;
 import rx.Observable;
+import rx.functions.Action0;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Engine implements HttpClientEngine {
 
     private HttpClient<ByteBuf, ByteBuf> client;
+    private final PoolCounters pool = new PoolCounters();
 
     @Override
     public void createClient(String host, int port) {
+        // RxNetty picks the transport and event loops globally, when the client is made
+        if (NettyOptions.TRANSPORT != null) {
+            if (NettyOptions.useEpoll("rxnetty", Epoll.isAvailable(), Epoll.unavailabilityCause())) {
+                RxNetty.useNativeTransportIfApplicable();
+            } else {
+                RxNetty.disableNativeTransport();
+            }
+        }
+        if (NettyOptions.THREADS > 0) {
+            RxNetty.useEventLoopProvider(new SingleNioLoopProvider(NettyOptions.THREADS));
+        }
         PoolConfig<ByteBuf, ByteBuf> poolConfig = new PoolConfig<ByteBuf, ByteBuf>().maxConnections(MAX_CONNECTION_POOL_SIZE);/* leave this out? .maxIdleTimeoutMillis(CONNECTION_TTL);*/
         client = HttpClient
                 .newClient(SingleHostPoolingProviderFactory.create(poolConfig),
                         Observable.just(new Host(new InetSocketAddress(host, port)))).readTimeOut(READ_TIMEOUT, TimeUnit.MILLISECONDS)
                 .channelOption(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT);
+        if (NettyOptions.customAllocator()) {
+            client = client.channelOption(ChannelOption.ALLOCATOR, allocator());
+        }
+        client.subscribe(new PoolListener());
+    }
+
+    private static ByteBufAllocator allocator() {
+        return NettyOptions.allocator(PlatformDependent.directBufferPreferred(),
+                PooledByteBufAllocator::new, UnpooledByteBufAllocator::new);
+    }
+
+    @Override
+    public PoolStats poolStats() {
+        return pool.snapshot();
+    }
+
+    // The pool publishes what it does as events.
+    private class PoolListener extends HttpClientEventsListener {
+        @Override
+        public void onPoolAcquireStart() {
+            pool.acquireStarted();
+        }
+
+        @Override
+        public void onPoolAcquireSuccess(long duration, TimeUnit timeUnit) {
+            pool.acquired();
+        }
+
+        @Override
+        public void onPoolAcquireFailed(long duration, TimeUnit timeUnit, Throwable throwable) {
+            pool.acquireFailed();
+        }
+
+        @Override
+        public void onPoolReleaseStart() {
+            pool.released();
+        }
+
+        @Override
+        public void onConnectSuccess(long duration, TimeUnit timeUnit) {
+            pool.connectionCreated();
+        }
+
+        @Override
+        public void onConnectionCloseSuccess(long duration, TimeUnit timeUnit) {
+            pool.connectionClosed();
+        }
     }
 
     @Override
@@ -47,6 +122,41 @@ public class Engine implements HttpClientEngine {
         return toCompletableFuture(businessLogic(mkPost(path, body)));
     }
 
+    @Override
+    public ByteBuffer blockingGETBytes(String path) {
+        return bytesLogic(client.createGet(path)).toBlocking().first();
+    }
+
+    @Override
+    public ByteBuffer blockingPOSTBytes(String path, String body) {
+        return bytesLogic(mkPost(path, body)).toBlocking().first();
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingGETBytes(String path) {
+        return toCompletableFuture(bytesLogic(client.createGet(path)));
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> nonblockingPOSTBytes(String path, String body) {
+        return toCompletableFuture(bytesLogic(mkPost(path, body)));
+    }
+
+    @Override
+    public CompletableFuture<Long> nonblockingStreamGET(String path) {
+        return toCompletableFuture(client.createGet(path).flatMap(response -> {
+            int status = response.getStatus().code();
+            if (status != 200) {
+                throw new IllegalStateException("Unexpected response code: " + status);
+            }
+            return response.getContent();
+        }).map(buffer -> {
+            long read = buffer.readableBytes();
+            buffer.release();
+            return read;
+        }).reduce(0L, Long::sum));
+    }
+
     private Observable<HttpClientResponse<ByteBuf>> mkPost(String uri, String body) {
         return client.createPost(uri).writeStringContent(Observable.just(body));
     }
@@ -68,8 +178,39 @@ public class Engine implements HttpClientEngine {
         .map(Object::toString);
     }
 
-    private CompletableFuture<String> toCompletableFuture(Observable<String> businessLogic) {
-         final CompletableFuture<String> future = new CompletableFuture<>();
+    // Same as businessLogic, but the chunks are gathered (not copied) into a composite buffer and
+    // copied out once at the end.  The composite owns the chunks, so releasing it releases them;
+    // if the response fails or is unsubscribed from part way, whatever it gathered is released then.
+    private Observable<ByteBuffer> bytesLogic(Observable<HttpClientResponse<ByteBuf>> request) {
+        return Observable.defer(() -> {
+            CompositeByteBuf composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+            // termination and unsubscription can come on different threads
+            AtomicBoolean released = new AtomicBoolean();
+            Action0 release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    composite.release();
+                }
+            };
+            return request.flatMap(response -> {
+                int status = response.getStatus().code();
+                if (status != 200) {
+                    throw new IllegalStateException("Unexpected response code: " + status);
+                }
+                return response.getContent();
+            }).collect(() -> composite, (CompositeByteBuf c, ByteBuf buffer) -> c.addComponent(true, buffer))
+            .map(c -> {
+                ByteBuffer bytes = ByteBuffer.allocate(c.readableBytes());
+                c.readBytes(bytes);
+                bytes.flip();
+                return bytes;
+            })
+            .doAfterTerminate(release)
+            .doOnUnsubscribe(release);
+        });
+    }
+
+    private <T> CompletableFuture<T> toCompletableFuture(Observable<T> businessLogic) {
+         final CompletableFuture<T> future = new CompletableFuture<>();
         // Credit to https://www.nurkiewicz.com/2014/11/converting-between-completablefuture.html
         businessLogic
                 .doOnError(future::completeExceptionally)